@@ -6,19 +6,23 @@
  */
 
 import java.util.ArrayList;
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.FileReader;
 import java.io.FileWriter;
 import java.io.IOException;
-import java.util.Scanner;
-import java.io.File;
 import java.io.FileNotFoundException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
 
 public final class Action
 {
     // instance variables - replace the example below with your own
     private final boolean src_cell;  // TRUE = moving from free cell; FALSE = moving from tableau
     private final int src_loc; // which cell or tableau pile to move from 
-    private final Card theCard;
+    private final Card theCard; // for a multi-card move, the bottom card of the run being moved
     private final int dest; // 0 = cell; 1-8 = tableau; 9 = foundation
+    private final int numCards; // more than 1 only for tableau-to-tableau sequence moves
 
     private static final String digits = "0123456789";
     private static final String letters = "abcd";
@@ -26,13 +30,21 @@ public final class Action
      * Constructor for objects of class Action
      */
     public Action(boolean fromCell, int src_pile, Card c, int dst_pile)
+    {
+        this(fromCell, src_pile, c, dst_pile, 1);
+    }
+
+    public Action(boolean fromCell, int src_pile, Card c, int dst_pile, int cards)
     {
         src_cell = fromCell;
         src_loc = src_pile;
         theCard = c;
         dest = dst_pile;
+        numCards = cards;
     }
 
+    // Format: source, card, destination, e.g. "1QD9" or "aKD3". A sequence move adds "x" and
+    // the number of cards, e.g. "4QD2x3" moves QD and the two cards on top of it to pile 2.
     public Action(String s) {
         if (s.charAt(0) >= '1' && s.charAt(0) <= '9') {
             src_cell = false;
@@ -42,18 +54,99 @@ public final class Action
             src_cell = true;
             src_loc = letters.indexOf(s.charAt(0));
         }
-        theCard = new Card(s.charAt(1),s.charAt(2));
+        theCard = Card.of(s.charAt(1),s.charAt(2));
         dest = digits.indexOf(s.charAt(3));
+        if (s.length() > 5 && s.charAt(4) == 'x') {
+            numCards = Integer.parseInt(s.substring(5));
+        }
+        else {
+            numCards = 1;
+        }
     }
     
+    // Moves can also be packed into a single int, which is how the solver handles them until
+    // a solution is found. Bits 0-5: card index; 6-9: source; 10: from cell;
+    // 11-14: destination; 15-19: number of cards.
+    public static int encode(boolean fromCell, int src_pile, int card, int dst_pile, int cards) {
+        return (card & 0x3F) | (src_pile << 6) | (fromCell ? 1 << 10 : 0) | (dst_pile << 11) | (cards << 15);
+    }
+
+    // Never a real move: every real move moves at least one card.
+    public static final int NO_MOVE = 0;
+
+    public static int cardOf(int move) { return move & 0x3F; }
+    public static int srcOf(int move) { return (move >>> 6) & 0xF; }
+    public static boolean fromCellOf(int move) { return (move & (1 << 10)) != 0; }
+    public static int destOf(int move) { return (move >>> 11) & 0xF; }
+    public static int numCardsOf(int move) { return (move >>> 15) & 0x1F; }
+
+    public static Action fromMove(int move) {
+        return new Action(fromCellOf(move), srcOf(move), Card.fromIndex(cardOf(move)), destOf(move),
+                          numCardsOf(move));
+    }
+
+    public int toMove() {
+        return encode(src_cell, src_loc, theCard.getIndex(), dest, numCards);
+    }
+
+    // In the binary format a single-card move takes one byte: the source in the high nibble
+    // (cells 0-3, piles 1-8 as 4-11) and the destination in the low one. A sequence move
+    // takes two: MULTI_CARD and the source pile, then the destination and the number of
+    // cards. The card itself isn't stored; readBinary gets it back from the position the
+    // move is played in.
+    private static final int MULTI_CARD = 0xC;
+
+    public void writeBinary(ByteBuffer buf) {
+        if (numCards > 1) {
+            if (numCards > 15) {
+                throw new IllegalStateException("too many cards to encode: " + this);
+            }
+            buf.put((byte) ((MULTI_CARD << 4) | src_loc));
+            buf.put((byte) ((dest << 4) | numCards));
+        }
+        else {
+            int src = src_cell ? src_loc : 3 + src_loc;
+            buf.put((byte) ((src << 4) | dest));
+        }
+    }
+
+    // How many bytes writeBinary will take for this action
+    public int binarySize() {
+        return (numCards > 1) ? 2 : 1;
+    }
+
+    // Reads an action written by writeBinary, to be played in position gs. Throws
+    // IllegalArgumentException if there is no such move there.
+    public static Action readBinary(ByteBuffer buf, GameState gs) {
+        int b = buf.get() & 0xFF;
+        int move;
+        if ((b >>> 4) == MULTI_CARD) {
+            int b2 = buf.get() & 0xFF;
+            move = gs.moveFrom(false, b & 0xF, b2 >>> 4, b2 & 0xF);
+        }
+        else {
+            int src = b >>> 4;
+            boolean fromCell = src < 4;
+            move = gs.moveFrom(fromCell, fromCell ? src : src - 3, b & 0xF, 1);
+        }
+        if (move == NO_MOVE) {
+            throw new IllegalArgumentException("bad action record: nothing to move");
+        }
+        return fromMove(move);
+    }
+
     public boolean fromCell() { return src_cell; }
     public int get_src_pile() { return src_loc; }
     public Card getCard() { return theCard; }
     public int get_dest_pile() { return dest; }
+    public int get_num_cards() { return numCards; }
     
     public String toDisplayString() {
         String s = src_cell ? "cell #" : "tableau pile ";
         String result = "Move card " + theCard.toString() + " from " + s + src_loc + " to ";
+        if (numCards > 1) {
+            result = "Move " + numCards + " cards starting with " + theCard.toString() + " from " + s + src_loc + " to ";
+        }
         if (dest == 0) {
             result = result + "a free cell.";
         }
@@ -74,16 +167,18 @@ public final class Action
         else {
             result = digits.charAt(src_loc) + result;
         }
+        if (numCards > 1) {
+            result = result + "x" + numCards;
+        }
         return result;
     }
     
     public static void dumpToFile(ArrayList<Action> Alist, String filename) {
-        try {
-            FileWriter fw = new FileWriter(filename);
+        try (BufferedWriter bw = new BufferedWriter(new FileWriter(filename))) {
             for (Action a : Alist) {
-                fw.write(a.toString() + "\n");
+                bw.write(a.toString());
+                bw.write('\n');
             }
-            fw.close();
         }
         catch (IOException e) {
             System.out.println("file dump failed due to IOException");
@@ -91,21 +186,26 @@ public final class Action
     }
     
     public static ArrayList<Action> readFromFile(String filename) {
-        File f = new File(filename);
-        Scanner sc;
-        try {
-            sc = new Scanner(f);
+        ArrayList<Action> result = new ArrayList<Action>();
+        try (BufferedReader br = new BufferedReader(new FileReader(filename))) {
+            String line;
+            while ((line = br.readLine()) != null) {
+                // usually one action per line, but any whitespace separates them
+                int i = 0;
+                while (i < line.length()) {
+                    while (i < line.length() && Character.isWhitespace(line.charAt(i))) i++;
+                    int start = i;
+                    while (i < line.length() && !Character.isWhitespace(line.charAt(i))) i++;
+                    if (i > start) result.add(new Action(line.substring(start, i)));
+                }
+            }
         }
         catch (FileNotFoundException e) {
             return null;
         }
-        
-        ArrayList<Action> result = new ArrayList<Action>();
-        while (sc.hasNext()) {
-            String s = sc.next();
-            result.add(new Action(s));
+        catch (IOException e) {
+            throw new UncheckedIOException(e);
         }
-        sc.close();
         return result;
     }
 }
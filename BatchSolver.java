@@ -0,0 +1,278 @@
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.IntConsumer;
+
+/**
+ * Solves a whole corpus of deals concurrently and writes one CSV row per deal.
+ *
+ * Usage: java BatchSolver [options] <deal file or directory>...
+ *        java BatchSolver [options] -ms [first-]last
+ *   -ms range     Microsoft deals first to last (first defaults to 1), generated on the
+ *                 fly rather than read from files; e.g. -ms 32000 for the classic set
+ *   -o file       where to write the results (default results.csv)
+ *   -threads n    worker threads (default: one per core)
+ *   -nodes n      give up on a deal after expanding n states
+ *   -time ms      give up on a deal after ms milliseconds
+ *   -mode m       astar (default), ida_star, beam or anytime (best within -time)
+ *   -beam w       beam width for -mode beam (default 1000)
+ *   -cache dir    keep what is learned about positions in dir (see SolutionCache), so a
+ *                 later batch over the same or overlapping deals can skip the work
+ *   -cache-size n most positions the cache holds (default 1000000)
+ *   -endgame file make h() exact near the end of a game with this endgame table (see
+ *                 EndgameTable)
+ *   -heuristic n  longest blocker cycle h() looks for, in piles: 1 to 4 (default 2; see
+ *                 GameState.setHeuristicLevel)
+ *
+ * Directories contribute every case_*.txt file inside them. Deals run on a work-stealing
+ * pool and each one has its own node and time budget, so a hard deal only ever ties up
+ * one thread; rows are written as soon as each deal finishes, not in input order. Over a
+ * large range of Microsoft deals, set -nodes or -time: a few deals have no solution, and
+ * A* will fill the heap proving it. A summary of the solve rate and throughput is printed
+ * at the end.
+ *
+ * Besides the outcomes of SearchStats, a row can say FILE_NOT_FOUND, BAD_DEAL (the file
+ * isn't a deal) or ERROR (the solver or the cache failed on it; the reason goes to
+ * System.err). Either way the rest of the batch carries on.
+ *
+ * @author Van Griffith
+ * @version 18 October 2026
+ */
+public class BatchSolver
+{
+    public static final String CSV_HEADER =
+        "deal,outcome,moves,nodes_expanded,nodes_generated,time_ms,peak_frontier,"
+        + "duplicates_rejected,nodes_per_sec,best_h,heap_bytes_per_node,cache_hits";
+
+    private static final int DEFAULT_CACHE_SIZE = 1000000;
+
+    private final long nodeLimit;
+    private final long timeLimitMillis;
+    private final SearchMode mode;
+    private final int beamWidth;
+    private final PrintWriter out;
+    private final AtomicInteger solved = new AtomicInteger();
+    private SolutionCache cache;
+
+    public BatchSolver(long nodeLimit, long timeLimitMillis, SearchMode mode, int beamWidth,
+                       PrintWriter out) {
+        this.nodeLimit = nodeLimit;
+        this.timeLimitMillis = timeLimitMillis;
+        this.mode = mode;
+        this.beamWidth = beamWidth;
+        this.out = out;
+    }
+
+    public static void main(String[] args) {
+        String outFile = "results.csv";
+        int threads = Runtime.getRuntime().availableProcessors();
+        long nodeLimit = Long.MAX_VALUE;
+        long timeLimit = Long.MAX_VALUE;
+        SearchMode mode = SearchMode.ASTAR;
+        int beamWidth = 1000;
+        ArrayList<File> deals = new ArrayList<File>();
+        int firstMsDeal = 0;
+        int lastMsDeal = -1;
+        String cacheDir = null;
+        int cacheSize = DEFAULT_CACHE_SIZE;
+        String endgameFile = null;
+
+        for (int i = 0; i < args.length; i++) {
+            if (args[i].equals("-o")) outFile = args[++i];
+            else if (args[i].equals("-threads")) threads = Integer.parseInt(args[++i]);
+            else if (args[i].equals("-nodes")) nodeLimit = Long.parseLong(args[++i]);
+            else if (args[i].equals("-time")) timeLimit = Long.parseLong(args[++i]);
+            else if (args[i].equals("-mode")) mode = SearchMode.valueOf(args[++i].toUpperCase());
+            else if (args[i].equals("-beam")) beamWidth = Integer.parseInt(args[++i]);
+            else if (args[i].equals("-cache")) cacheDir = args[++i];
+            else if (args[i].equals("-cache-size")) cacheSize = Integer.parseInt(args[++i]);
+            else if (args[i].equals("-endgame")) endgameFile = args[++i];
+            else if (args[i].equals("-heuristic")) GameState.setHeuristicLevel(Integer.parseInt(args[++i]));
+            else if (args[i].equals("-ms")) {
+                String range = args[++i];
+                int dash = range.indexOf('-');
+                firstMsDeal = (dash < 0) ? 1 : Integer.parseInt(range.substring(0, dash));
+                lastMsDeal = Integer.parseInt(range.substring(dash + 1));
+            }
+            else addDeals(new File(args[i]), deals);
+        }
+        int numMsDeals = lastMsDeal - firstMsDeal + 1;
+        if (deals.isEmpty() && numMsDeals <= 0) {
+            System.err.println("No deals given");
+            return;
+        }
+
+        try {
+            if (endgameFile != null) GameState.setEndgameTable(EndgameTable.open(endgameFile));
+        }
+        catch (IOException e) {
+            System.err.println("could not open endgame table " + endgameFile + ": " + e.getMessage());
+            return;
+        }
+        SolutionCache cache = null;
+        try {
+            if (cacheDir != null) cache = new SolutionCache(cacheDir, cacheSize);
+        }
+        catch (IOException e) {
+            System.err.println("could not open cache " + cacheDir + ": " + e.getMessage());
+            return;
+        }
+
+        try {
+            PrintWriter out = new PrintWriter(new FileWriter(outFile));
+            out.println(CSV_HEADER);
+            BatchSolver batch = new BatchSolver(nodeLimit, timeLimit, mode, beamWidth, out);
+            batch.setCache(cache);
+            long start = System.nanoTime();
+            int total;
+            if (numMsDeals > 0) {
+                total = numMsDeals;
+                System.out.printf("Solving Microsoft deals %d to %d on %d threads...%n",
+                                  firstMsDeal, lastMsDeal, threads);
+                batch.runMicrosoftDeals(firstMsDeal, lastMsDeal, threads);
+            }
+            else {
+                total = deals.size();
+                System.out.printf("Solving %d deals on %d threads...%n", total, threads);
+                batch.run(deals, threads);
+            }
+            out.close();
+            double seconds = (System.nanoTime() - start) / 1e9;
+            System.out.printf("Solved %d of %d deals (%.1f%%) in %.1f s, %.1f deals/s%n",
+                              batch.getSolvedCount(), total, 100.0 * batch.getSolvedCount() / total,
+                              seconds, total / seconds);
+        }
+        catch (IOException e) {
+            System.out.println("could not write " + outFile + " due to IOException");
+        }
+        finally {
+            try {
+                if (cache != null) cache.close();
+            }
+            catch (IOException e) {
+                System.err.println("could not close cache " + cacheDir + ": " + e.getMessage());
+            }
+        }
+    }
+
+    // Every deal will look itself up in cache first and record what it found; null for none.
+    public void setCache(SolutionCache cache) {
+        this.cache = cache;
+    }
+
+    private static void addDeals(File f, ArrayList<File> deals) {
+        if (f.isDirectory()) {
+            File[] files = f.listFiles((dir, name) -> name.startsWith("case_") && name.endsWith(".txt"));
+            if (files == null) return;
+            Arrays.sort(files);
+            deals.addAll(Arrays.asList(files));
+        }
+        else {
+            deals.add(f);
+        }
+    }
+
+    public void run(ArrayList<File> deals, int threads) {
+        run(new DealTask(0, deals.size(), i -> solveFile(deals.get(i))), threads);
+    }
+
+    // Deals are generated as the pool gets to them, so nothing but the results touches disk.
+    public void runMicrosoftDeals(int first, int last, int threads) {
+        run(new DealTask(first, last + 1, n -> solveOne("MS" + n, GameState.microsoftDeal(n))), threads);
+    }
+
+    private void run(DealTask task, int threads) {
+        ForkJoinPool pool = new ForkJoinPool(threads);
+        try {
+            pool.invoke(task);
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    // How many deals so far have come out SOLVED
+    public int getSolvedCount() {
+        return solved.get();
+    }
+
+    // Splits a range of deals in half until a single deal is left, so idle threads can steal
+    // the untouched halves from busy ones.
+    private static class DealTask extends RecursiveAction
+    {
+        private static final long serialVersionUID = 1L;
+
+        private final int from;
+        private final int to;
+        private final IntConsumer solver;
+
+        DealTask(int from, int to, IntConsumer solver) {
+            this.from = from;
+            this.to = to;
+            this.solver = solver;
+        }
+
+        protected void compute() {
+            if (to - from == 1) {
+                solver.accept(from);
+            }
+            else if (to > from) {
+                int mid = (from + to) >>> 1;
+                invokeAll(new DealTask(from, mid, solver), new DealTask(mid, to, solver));
+            }
+        }
+    }
+
+    private void solveFile(File deal) {
+        GameState start;
+        try {
+            start = new GameState(deal.getPath());
+        }
+        catch (FileNotFoundException e) {
+            writeRow(csvRow(deal.getName(), "FILE_NOT_FOUND", new SearchStats()));
+            return;
+        }
+        catch (RuntimeException e) {
+            // A malformed deal file should cost us one row, not the whole batch.
+            writeRow(csvRow(deal.getName(), "BAD_DEAL", new SearchStats()));
+            return;
+        }
+        solveOne(deal.getName(), start);
+    }
+
+    private void solveOne(String name, GameState start) {
+        SearchStats stats = new SearchStats();
+        try {
+            FreeCell.search(start, mode, beamWidth, nodeLimit, timeLimitMillis, stats, cache);
+        }
+        catch (RuntimeException e) {
+            // Nothing wrong with the deal: the solver or the cache failed. Same as above, it
+            // costs this deal its row and nothing more.
+            System.err.println(name + ": " + e);
+            writeRow(csvRow(name, "ERROR", stats));
+            return;
+        }
+        if (stats.getOutcome() == SearchStats.Outcome.SOLVED) solved.incrementAndGet();
+        writeRow(csvRow(name, stats.getOutcome().toString(), stats));
+    }
+
+    private void writeRow(String row) {
+        synchronized (out) {
+            out.println(row);
+            out.flush();
+        }
+    }
+
+    private static String csvRow(String name, String outcome, SearchStats stats) {
+        return name + "," + outcome + "," + stats.getSolutionLength() + "," + stats.getNodesExpanded()
+            + "," + stats.getNodesGenerated() + "," + stats.getElapsedMillis() + "," + stats.getPeakFrontier()
+            + "," + stats.getDuplicatesRejected() + "," + stats.getNodesPerSecond() + "," + stats.getBestH()
+            + "," + stats.getHeapBytesPerNode() + "," + stats.getCacheHits();
+    }
+}
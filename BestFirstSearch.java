@@ -0,0 +1,211 @@
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.function.Consumer;
+
+/**
+ * Search engines that rank states by path length + weight * h() and always expand the best
+ * one next, keeping every position they have seen: A*, where the weight is 1, and anytime
+ * weighted A*, which starts heavier. Both honour the node and time limits, cancellation,
+ * and the other budgets in SearchStats the same way.
+ *
+ * @author Van Griffith
+ * @version 18 October 2026
+ */
+public class BestFirstSearch
+{
+    // Weights on h(), in tenths. Anytime moves on to the next one after each solution, and
+    // once at 1 it stays there.
+    private static final int[] ASTAR_WEIGHTS = { 10 };
+    private static final int[] ANYTIME_WEIGHTS = { 20, 15, 12, 10 };
+
+    private final int[] weights;
+    private int step;
+    private final boolean firstSolutionOnly;
+    private final long nodeLimit;
+    private final long deadline;
+    private final SearchStats stats;
+    private final SolutionCache cache;
+    private final Consumer<ArrayList<Action>> onImproved;
+
+    private final BucketQueue pQueue = new BucketQueue();
+    // Every position we have queued, mapped to the shortest path length that reached it.
+    // Entries are never removed, so this doubles as the closed set.
+    private final HashMap<GameState, Integer> seen = new HashMap<GameState, Integer>();
+    private final int[] moves = new int[GameState.MAX_MOVES];
+
+    private ArrayList<Action> best = new ArrayList<Action>();
+    private int bestLength = Integer.MAX_VALUE;
+
+    private BestFirstSearch(int[] weights, boolean firstSolutionOnly, long nodeLimit, long timeLimitMillis,
+                            SearchStats stats, SolutionCache cache, Consumer<ArrayList<Action>> onImproved) {
+        this.weights = weights;
+        this.firstSolutionOnly = firstSolutionOnly;
+        this.nodeLimit = nodeLimit;
+        this.deadline = (timeLimitMillis == Long.MAX_VALUE) ? Long.MAX_VALUE
+                                                            : System.nanoTime() + timeLimitMillis * 1000000;
+        this.stats = stats;
+        this.cache = cache;
+        this.onImproved = onImproved;
+    }
+
+    /**
+     * A* search that gives up after expanding nodeLimit states or after timeLimitMillis of
+     * wall-clock time. A position the cache (if not null) knows the answer for is not
+     * expanded: a known solution from there ends the search, and a known dead end is
+     * dropped. Returns the solution, or an empty list if none was found.
+     */
+    public static ArrayList<Action> aStar(GameState start, long nodeLimit, long timeLimitMillis,
+                                          SearchStats stats, SolutionCache cache) {
+        return search(SearchMode.ASTAR, new BestFirstSearch(ASTAR_WEIGHTS, true, nodeLimit, timeLimitMillis,
+                                                            stats, cache, null), start);
+    }
+
+    /**
+     * Anytime weighted A*: for when some answer is needed by a deadline, and a better one is
+     * welcome if there is time left.
+     *
+     * A heavy weight on h() heads almost straight for a win, so the first solution comes
+     * quickly, if not a short one. Every time a shorter solution turns up, it is passed to
+     * onImproved (if not null) on this thread, the weight comes down a step, and the
+     * frontier is re-ranked and searched on. Meanwhile, any state that can't beat the best
+     * solution so far is dropped, judged by GameState.minMovesLeft rather than h(), which can
+     * overestimate. So once the frontier runs dry, the last solution is as short as any
+     * there is.
+     *
+     * Returns the shortest solution found, or an empty list if there was none. The outcome
+     * is SOLVED whenever some solution was found, however the search ended.
+     */
+    public static ArrayList<Action> anytime(GameState start, long nodeLimit, long timeLimitMillis,
+                                            SearchStats stats, Consumer<ArrayList<Action>> onImproved) {
+        return search(SearchMode.ANYTIME, new BestFirstSearch(ANYTIME_WEIGHTS, false, nodeLimit, timeLimitMillis,
+                                                              stats, null, onImproved), start);
+    }
+
+    private static ArrayList<Action> search(SearchMode mode, BestFirstSearch search, GameState start) {
+        SearchStats stats = search.stats;
+        stats.begin(mode);
+        try {
+            search.run(start);
+            return search.best;
+        } catch (OutOfMemoryError e) {
+            ArrayList<Action> best = search.best;
+            // Drop the search tree now so whatever else is running gets the heap back.
+            search = null;
+            if (stats.outcome != SearchStats.Outcome.SOLVED) stats.outcome = SearchStats.Outcome.OUT_OF_MEMORY;
+            return best;
+        } finally {
+            if (search != null) stats.end(search.pQueue.size(), search.seen.size());
+            else stats.end(0, 0);
+        }
+    }
+
+    private void run(GameState start) {
+        pQueue.offer(start, priority(start));
+        seen.put(start, start.getDepth());
+        stats.sawH(start.h());
+        while (!pQueue.isEmpty()) {
+            GameState gs = pQueue.poll();
+            int g = gs.getDepth();
+            // Stale entry (the same position was re-queued later with a shorter path), or one
+            // that can no longer lead to a shorter solution than the best so far
+            if (g > seen.get(gs) || g + gs.minMovesLeft() >= bestLength) continue;
+            if (gs.isWin()) {
+                if (found(gs.getActions())) return;
+                continue;
+            }
+            if (cache != null) {
+                SolutionCache.Entry known = cache.lookup(gs);
+                if (known != null && known.isSolved()) {
+                    stats.cacheHits++;
+                    ArrayList<Action> actions = gs.getActions();
+                    actions.addAll(known.getPath());
+                    if (actions.size() < bestLength && found(actions)) return;
+                    continue;
+                }
+                if (known != null && known.isUnsolvable()) {
+                    stats.cacheHits++;
+                    continue;
+                }
+            }
+            if (outOfBudget()) return;
+            // The start's moves aren't pruned by whatever led to it.
+            expand(gs, (gs == start) ? Action.NO_MOVE : gs.getLastMove());
+        }
+    }
+
+    // Records a solution shorter than any before it. Returns true if that ends the search.
+    private boolean found(ArrayList<Action> actions) {
+        best = actions;
+        bestLength = actions.size();
+        stats.outcome = SearchStats.Outcome.SOLVED;
+        stats.solutionLength = actions.size();
+        if (onImproved != null) onImproved.accept(new ArrayList<Action>(actions));
+        if (firstSolutionOnly) return true;
+        if (step < weights.length - 1) {
+            step++;
+            requeue();
+        }
+        return false;
+    }
+
+    // Checked before each expansion. The reason for stopping only becomes the outcome if
+    // nothing has been found yet.
+    private boolean outOfBudget() {
+        SearchStats.Outcome reason = null;
+        if (stats.stopRequested()) {
+            reason = SearchStats.Outcome.CANCELLED;
+        }
+        else if (stats.nodesExpanded >= nodeLimit) {
+            reason = SearchStats.Outcome.NODE_LIMIT;
+        }
+        else if (stats.nodesExpanded % SearchStats.CHECK_INTERVAL == 0) {
+            stats.checkpoint(pQueue.size(), seen.size());
+            if (System.nanoTime() > deadline) reason = SearchStats.Outcome.TIME_LIMIT;
+        }
+        if (reason == null) return false;
+        if (stats.outcome != SearchStats.Outcome.SOLVED) stats.outcome = reason;
+        return true;
+    }
+
+    private void expand(GameState gs, int previousMove) {
+        stats.nodesExpanded++;
+        int numMoves = gs.generateMoves(moves, previousMove);
+        for (int i = 0; i < numMoves; i++) {
+            GameState nexState = gs.nextState(moves[i]);
+            stats.nodesGenerated++;
+            if (nexState.getDepth() + nexState.minMovesLeft() >= bestLength) continue;
+            Integer bestG = seen.get(nexState);
+            // New position, or a cheaper path to one we already have: (re)open it.
+            if (bestG == null || nexState.getDepth() < bestG) {
+                seen.put(nexState, nexState.getDepth());
+                pQueue.offer(nexState, priority(nexState));
+                stats.sawH(nexState.h());
+            }
+            else {
+                stats.duplicatesRejected++;
+            }
+        }
+        if (pQueue.size() > stats.peakFrontier) stats.peakFrontier = pQueue.size();
+    }
+
+    // path length + weight * h(), all in tenths so the bucket queue can take it. At weight
+    // 1 this ranks states exactly as getScore() does.
+    private int priority(GameState gs) {
+        return 10 * gs.getDepth() + weights[step] * gs.h();
+    }
+
+    // Re-ranks the frontier under the current weight, dropping the entries run would skip
+    // anyway.
+    private void requeue() {
+        ArrayList<GameState> frontier = new ArrayList<GameState>(pQueue.size());
+        while (!pQueue.isEmpty()) {
+            GameState gs = pQueue.poll();
+            int g = gs.getDepth();
+            if (g <= seen.get(gs) && g + gs.minMovesLeft() < bestLength) frontier.add(gs);
+        }
+        pQueue.clear();
+        for (GameState gs : frontier) {
+            pQueue.offer(gs, priority(gs));
+        }
+    }
+}
@@ -0,0 +1,209 @@
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Compact binary files for large numbers of positions and for solutions.
+ *
+ * A position file is the 4-byte magic "FCST", the number of positions as an int, then each
+ * position in GameState.BINARY_SIZE (52) bytes, so position i can be read straight from
+ * its offset. A solution file is the magic "FCSL", the number of actions, then each action
+ * in one or two bytes (see Action.writeBinary). Like actions.txt, it is only meaningful
+ * together with the position it starts from. Writes go through a FileChannel; reads map the
+ * whole file into memory.
+ *
+ * Run as a program to convert between these and the text formats:
+ *   java BinaryFiles states out.fcst case_1.txt case_2.txt ...
+ *   java BinaryFiles unstates in.fcst dir      (writes dir/case_1.txt, dir/case_2.txt, ...)
+ *   java BinaryFiles solution case.txt actions.txt out.fcsl
+ *   java BinaryFiles unsolution case.txt in.fcsl actions.txt
+ *
+ * @author Van Griffith
+ * @version 18 October 2026
+ */
+public class BinaryFiles
+{
+    private static final int STATES_MAGIC = 0x46435354;    // "FCST"
+    private static final int SOLUTION_MAGIC = 0x4643534C;  // "FCSL"
+    private static final int HEADER_SIZE = 8;
+    private static final int BUFFER_SIZE = 1 << 16;
+
+    private BinaryFiles() {}
+
+    public static void writeStates(String filename, List<GameState> states) throws IOException {
+        try (FileChannel ch = openForWrite(filename)) {
+            ByteBuffer buf = ByteBuffer.allocateDirect(BUFFER_SIZE);
+            buf.putInt(STATES_MAGIC).putInt(states.size());
+            for (GameState gs : states) {
+                if (buf.remaining() < GameState.BINARY_SIZE) drain(buf, ch);
+                gs.writeBinary(buf);
+            }
+            drain(buf, ch);
+        }
+    }
+
+    public static ArrayList<GameState> readStates(String filename) throws IOException {
+        MappedByteBuffer map = map(filename, STATES_MAGIC);
+        int count = map.getInt();
+        checkLength(map, (long) count * GameState.BINARY_SIZE, filename);
+        ArrayList<GameState> states = new ArrayList<GameState>(count);
+        for (int i = 0; i < count; i++) {
+            states.add(GameState.readBinary(map));
+        }
+        return states;
+    }
+
+    // Reads just the position at the given index, without touching the rest of the file.
+    public static GameState readState(String filename, int index) throws IOException {
+        MappedByteBuffer map = map(filename, STATES_MAGIC);
+        int count = map.getInt();
+        checkLength(map, (long) count * GameState.BINARY_SIZE, filename);
+        if (index < 0 || index >= count) {
+            throw new IndexOutOfBoundsException("position " + index + " of " + count);
+        }
+        map.position(HEADER_SIZE + index * GameState.BINARY_SIZE);
+        return GameState.readBinary(map);
+    }
+
+    public static int countStates(String filename) throws IOException {
+        return map(filename, STATES_MAGIC).getInt();
+    }
+
+    public static void writeSolution(String filename, List<Action> actions) throws IOException {
+        try (FileChannel ch = openForWrite(filename)) {
+            ByteBuffer buf = ByteBuffer.allocateDirect(BUFFER_SIZE);
+            buf.putInt(SOLUTION_MAGIC).putInt(actions.size());
+            for (Action a : actions) {
+                if (buf.remaining() < 2) drain(buf, ch);
+                a.writeBinary(buf);
+            }
+            drain(buf, ch);
+        }
+    }
+
+    // Reads a solution written by writeSolution. The cards are filled back in by playing the
+    // moves out from start, which is left untouched.
+    public static ArrayList<Action> readSolution(String filename, GameState start) throws IOException {
+        MappedByteBuffer map = map(filename, SOLUTION_MAGIC);
+        int count = map.getInt();
+        // Actions take one or two bytes each, so the length can only be checked as we go.
+        if (count < 0 || count > map.remaining()) {
+            throw new IOException(filename + " is truncated or has trailing bytes");
+        }
+        ArrayList<Action> actions = new ArrayList<Action>(count);
+        GameState gs = new GameState(start);
+        for (int i = 0; i < count; i++) {
+            Action a;
+            try {
+                a = Action.readBinary(map, gs);
+            }
+            catch (BufferUnderflowException e) {
+                throw new IOException(filename + " is truncated or has trailing bytes");
+            }
+            if (!gs.apply(a)) {
+                throw new IllegalArgumentException(filename + ": move " + (i+1) + " (" + a + ") is illegal");
+            }
+            actions.add(a);
+        }
+        if (map.hasRemaining()) {
+            throw new IOException(filename + " is truncated or has trailing bytes");
+        }
+        return actions;
+    }
+
+    private static FileChannel openForWrite(String filename) throws IOException {
+        return FileChannel.open(Paths.get(filename), StandardOpenOption.CREATE,
+                                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+    }
+
+    private static void drain(ByteBuffer buf, FileChannel ch) throws IOException {
+        buf.flip();
+        while (buf.hasRemaining()) {
+            ch.write(buf);
+        }
+        buf.clear();
+    }
+
+    // Maps the whole file and reads past its magic number, leaving the buffer at the count.
+    private static MappedByteBuffer map(String filename, int magic) throws IOException {
+        Path path = Paths.get(filename);
+        if (!path.toFile().isFile()) {
+            throw new FileNotFoundException(filename);
+        }
+        try (FileChannel ch = FileChannel.open(path, StandardOpenOption.READ)) {
+            if (ch.size() < HEADER_SIZE) {
+                throw new IOException(filename + " is too short to be a FreeCell binary file");
+            }
+            MappedByteBuffer map = ch.map(FileChannel.MapMode.READ_ONLY, 0, ch.size());
+            if (map.getInt() != magic) {
+                throw new IOException(filename + " is not a FreeCell " +
+                                      (magic == STATES_MAGIC ? "position" : "solution") + " file");
+            }
+            return map;
+        }
+    }
+
+    private static void checkLength(MappedByteBuffer map, long bodyLength, String filename)
+            throws IOException {
+        if (map.capacity() != HEADER_SIZE + bodyLength) {
+            throw new IOException(filename + " is truncated or has trailing bytes");
+        }
+    }
+
+    public static void main(String[] args) {
+        try {
+            if (args.length >= 2 && args[0].equals("states")) {
+                ArrayList<GameState> states = new ArrayList<GameState>();
+                for (int i = 2; i < args.length; i++) {
+                    states.add(new GameState(args[i]));
+                }
+                writeStates(args[1], states);
+                System.out.printf("Wrote %d positions to %s%n", states.size(), args[1]);
+            }
+            else if (args.length == 3 && args[0].equals("unstates")) {
+                ArrayList<GameState> states = readStates(args[1]);
+                for (int i = 0; i < states.size(); i++) {
+                    states.get(i).dumpToFile(new File(args[2], "case_" + (i+1) + ".txt").getPath());
+                }
+                System.out.printf("Wrote %d positions to %s%n", states.size(), args[2]);
+            }
+            else if (args.length == 4 && args[0].equals("solution")) {
+                ArrayList<Action> actions = Action.readFromFile(args[2]);
+                if (actions == null) throw new FileNotFoundException(args[2]);
+                // The cards aren't stored, so make sure they can be recovered from this deal
+                GameState gs = new GameState(args[1]);
+                for (int i = 0; i < actions.size(); i++) {
+                    if (!gs.apply(actions.get(i))) {
+                        throw new IllegalArgumentException("move " + (i+1) + " (" + actions.get(i)
+                                                           + ") is illegal in " + args[1]);
+                    }
+                }
+                writeSolution(args[3], actions);
+                System.out.printf("Wrote %d actions to %s%n", actions.size(), args[3]);
+            }
+            else if (args.length == 4 && args[0].equals("unsolution")) {
+                ArrayList<Action> actions = readSolution(args[2], new GameState(args[1]));
+                Action.dumpToFile(actions, args[3]);
+                System.out.printf("Wrote %d actions to %s%n", actions.size(), args[3]);
+            }
+            else {
+                System.err.println("Usage: java BinaryFiles states out.fcst case.txt...");
+                System.err.println("       java BinaryFiles unstates in.fcst dir");
+                System.err.println("       java BinaryFiles solution case.txt actions.txt out.fcsl");
+                System.err.println("       java BinaryFiles unsolution case.txt in.fcsl actions.txt");
+            }
+        }
+        catch (IOException | IllegalArgumentException e) {
+            System.err.println("conversion failed: " + e.getMessage());
+        }
+    }
+}
@@ -0,0 +1,249 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+
+/**
+ * Search engines whose memory use stays flat no matter how long they run, for deals where
+ * A* would fill the heap. Both use the same h(), move generator and isWin() as A*, and
+ * honour the same node and time limits.
+ *
+ * @author Van Griffith
+ * @version 18 October 2026
+ */
+public class BoundedSearch
+{
+    private static final int FOUND = -1;
+
+    private final long nodeLimit;
+    private final long deadline;
+    private final SearchStats stats;
+    private boolean stopped;
+    private GameState goal;
+
+    // What the search is holding right now, for the progress reports in stats.
+    private int frontier;
+    private long stored;
+
+    // IDA*'s current line of play, and the hash of each position along it (the start's
+    // first) so it never walks in a circle. origin is a copy of the start that a line is
+    // replayed on to confirm a matching hash.
+    private int[] path = new int[64];
+    private int[] pathHashes = new int[65];
+    private int pathLength;
+    private GameState origin;
+
+    // One move buffer and one ordering buffer per depth, reused across the whole search.
+    private final ArrayList<int[]> moveBuffers = new ArrayList<int[]>();
+    private final ArrayList<long[]> orderBuffers = new ArrayList<long[]>();
+    private final int[] moves = new int[GameState.MAX_MOVES];
+
+    private BoundedSearch(long nodeLimit, long timeLimitMillis, SearchStats stats) {
+        this.nodeLimit = nodeLimit;
+        this.deadline = (timeLimitMillis == Long.MAX_VALUE) ? Long.MAX_VALUE
+                                                            : System.nanoTime() + timeLimitMillis * 1000000;
+        this.stats = stats;
+    }
+
+    /**
+     * Iterative-deepening A*: repeated depth-first passes, each cut off at the smallest score
+     * that the previous pass could not reach. Nothing is kept between passes. A copy of
+     * the start is walked with apply/undo, so the search itself allocates nothing per node.
+     */
+    public static ArrayList<Action> idaStar(GameState start, long nodeLimit, long timeLimitMillis,
+                                            SearchStats stats) {
+        stats.begin(SearchMode.IDA_STAR);
+        BoundedSearch search = new BoundedSearch(nodeLimit, timeLimitMillis, stats);
+        try {
+            stats.sawH(start.h());
+            GameState gs = new GameState(start);
+            search.origin = new GameState(start);
+            search.pathHashes[0] = gs.hashCode();
+            int bound = gs.getScore();
+            while (true) {
+                int next = search.dfs(gs, bound);
+                if (next == FOUND) {
+                    ArrayList<Action> actions = start.getActions();
+                    for (int i = 0; i < search.pathLength; i++) {
+                        actions.add(Action.fromMove(search.path[i]));
+                    }
+                    stats.outcome = SearchStats.Outcome.SOLVED;
+                    stats.solutionLength = actions.size();
+                    return actions;
+                }
+                if (search.stopped || next == Integer.MAX_VALUE) return new ArrayList<Action>();
+                bound = next;
+            }
+        } finally {
+            stats.end(search.frontier, search.stored);
+        }
+    }
+
+    // Returns FOUND (leaving the winning line in path and gs on the winning position), or the
+    // smallest score beyond the bound seen below gs, with gs back where it started.
+    private int dfs(GameState gs, int bound) {
+        if (gs.getScore() > bound) return gs.getScore();
+        if (gs.isWin()) return FOUND;
+        if (outOfBudget()) return Integer.MAX_VALUE;
+        stats.nodesExpanded++;
+        frontier = pathLength + 1;
+        stored = pathLength + 1;
+        if (frontier > stats.peakFrontier) stats.peakFrontier = frontier;
+
+        if (moveBuffers.size() == pathLength) {
+            moveBuffers.add(new int[GameState.MAX_MOVES]);
+            orderBuffers.add(new long[GameState.MAX_MOVES]);
+        }
+        int[] moves = moveBuffers.get(pathLength);
+        long[] order = orderBuffers.get(pathLength);
+
+        // Try the most promising moves first: score each one by making and unmaking it.
+        int previous = (pathLength == 0) ? Action.NO_MOVE : path[pathLength - 1];
+        int numMoves = gs.generateMoves(moves, previous);
+        stats.nodesGenerated += numMoves;
+        for (int i = 0; i < numMoves; i++) {
+            gs.apply(moves[i]);
+            order[i] = ((long) gs.getScore() << 32) | i;
+            stats.sawH(gs.h());
+            gs.undo(moves[i]);
+        }
+        Arrays.sort(order, 0, numMoves);
+
+        int min = Integer.MAX_VALUE;
+        for (int k = 0; k < numMoves; k++) {
+            int move = moves[(int) order[k]];
+            gs.apply(move);
+            if (!onPath(gs)) {
+                if (pathLength == path.length) {
+                    path = Arrays.copyOf(path, 2 * pathLength);
+                    pathHashes = Arrays.copyOf(pathHashes, 2 * pathLength + 1);
+                }
+                path[pathLength++] = move;
+                pathHashes[pathLength] = gs.hashCode();
+                int t = dfs(gs, bound);
+                if (t == FOUND) return FOUND;
+                pathLength--;
+                if (t < min) min = t;
+            }
+            else {
+                stats.duplicatesRejected++;
+            }
+            gs.undo(move);
+            if (stopped) return Integer.MAX_VALUE;
+        }
+        return min;
+    }
+
+    // True if gs is already on the current line. The hashes pick out candidates, and a
+    // candidate is confirmed by replaying the line up to it on origin and back again.
+    private boolean onPath(GameState gs) {
+        int hash = gs.hashCode();
+        for (int i = 0; i <= pathLength; i++) {
+            if (pathHashes[i] != hash) continue;
+            for (int k = 0; k < i; k++) {
+                origin.apply(path[k]);
+            }
+            boolean same = origin.equals(gs);
+            for (int k = i - 1; k >= 0; k--) {
+                origin.undo(path[k]);
+            }
+            if (same) return true;
+        }
+        return false;
+    }
+
+    /**
+     * Beam search: expands one whole layer at a time and keeps only the beamWidth best-scoring
+     * new positions for the next layer. A position that has been in any layer is never let
+     * into another, so the search can't go round in circles and ends once a layer has
+     * nothing new to offer. Remembering them costs at most beamWidth entries a layer, which
+     * the layers' parent links keep alive anyway. Fast and small, but it can miss solutions
+     * that A* would find.
+     */
+    public static ArrayList<Action> beam(GameState start, int beamWidth, long nodeLimit,
+                                         long timeLimitMillis, SearchStats stats) {
+        stats.begin(SearchMode.BEAM);
+        BoundedSearch search = new BoundedSearch(nodeLimit, timeLimitMillis, stats);
+        try {
+            stats.sawH(start.h());
+            if (start.isWin()) {
+                search.goal = start;
+                return search.solved();
+            }
+            ArrayList<GameState> layer = new ArrayList<GameState>();
+            layer.add(start);
+            HashSet<GameState> visited = new HashSet<GameState>(layer);
+            while (!layer.isEmpty()) {
+                HashSet<GameState> next = new HashSet<GameState>();
+                search.frontier = layer.size();
+                for (GameState gs : layer) {
+                    if (search.outOfBudget()) return new ArrayList<Action>();
+                    stats.nodesExpanded++;
+                    // As in IDA*, the start's moves aren't pruned by whatever led to it.
+                    int previousMove = (gs == start) ? Action.NO_MOVE : gs.getLastMove();
+                    for (GameState child : search.successors(gs, previousMove)) {
+                        if (child.isWin()) {
+                            search.goal = child;
+                            return search.solved();
+                        }
+                        if (!visited.contains(child) && next.add(child)) {
+                            stats.sawH(child.h());
+                        }
+                        else {
+                            stats.duplicatesRejected++;
+                        }
+                    }
+                    search.stored = visited.size() + next.size();
+                }
+                ArrayList<GameState> candidates = new ArrayList<GameState>(next);
+                Collections.sort(candidates);
+                if (candidates.size() > beamWidth) {
+                    candidates = new ArrayList<GameState>(candidates.subList(0, beamWidth));
+                }
+                if (candidates.size() > stats.peakFrontier) stats.peakFrontier = candidates.size();
+                visited.addAll(candidates);
+                layer = candidates;
+            }
+            return new ArrayList<Action>();
+        } finally {
+            stats.end(search.frontier, search.stored);
+        }
+    }
+
+    private ArrayList<GameState> successors(GameState gs, int previousMove) {
+        int numMoves = gs.generateMoves(moves, previousMove);
+        ArrayList<GameState> result = new ArrayList<GameState>(numMoves);
+        for (int i = 0; i < numMoves; i++) {
+            result.add(gs.nextState(moves[i]));
+        }
+        stats.nodesGenerated += result.size();
+        return result;
+    }
+
+    private boolean outOfBudget() {
+        if (stopped) return true;
+        if (stats.stopRequested()) {
+            stats.outcome = SearchStats.Outcome.CANCELLED;
+            stopped = true;
+        }
+        else if (stats.nodesExpanded >= nodeLimit) {
+            stats.outcome = SearchStats.Outcome.NODE_LIMIT;
+            stopped = true;
+        }
+        else if (stats.nodesExpanded % SearchStats.CHECK_INTERVAL == 0) {
+            stats.checkpoint(frontier, stored);
+            if (System.nanoTime() > deadline) {
+                stats.outcome = SearchStats.Outcome.TIME_LIMIT;
+                stopped = true;
+            }
+        }
+        return stopped;
+    }
+
+    private ArrayList<Action> solved() {
+        ArrayList<Action> actions = goal.getActions();
+        stats.outcome = SearchStats.Outcome.SOLVED;
+        stats.solutionLength = actions.size();
+        return actions;
+    }
+}
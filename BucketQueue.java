@@ -0,0 +1,73 @@
+import java.util.ArrayList;
+
+/**
+ * Priority queue of GameStates keyed by getScore(), or by a score the caller works out,
+ * for the A* frontier.
+ *
+ * Scores are small non-negative integers (path length plus h(), a few hundred at most), so
+ * rather than a binary heap this keeps one bucket per score and a pointer to the lowest
+ * non-empty one; offer and poll are O(1) apart from the occasional walk up to the next
+ * bucket. Within a bucket the last state offered comes out first. Those are usually the
+ * deepest ones, and ties always break the same way from run to run.
+ *
+ * @author Van Griffith
+ * @version 18 October 2026
+ */
+public class BucketQueue
+{
+    private final ArrayList<ArrayList<GameState>> buckets = new ArrayList<ArrayList<GameState>>();
+    private int minBucket; // no state has a lower score than this
+    private int size;
+
+    public void offer(GameState gs) {
+        offer(gs, gs.getScore());
+    }
+
+    // Queues gs under the given score instead of its own, for searches that weigh the path
+    // length and h() differently. Don't mix the two in one queue.
+    public void offer(GameState gs, int score) {
+        while (buckets.size() <= score) {
+            buckets.add(new ArrayList<GameState>());
+        }
+        buckets.get(score).add(gs);
+        if (size == 0 || score < minBucket) minBucket = score;
+        size++;
+    }
+
+    public GameState poll() {
+        if (size == 0) return null;
+        ArrayList<GameState> bucket = lowestBucket();
+        size--;
+        return bucket.remove(bucket.size() - 1);
+    }
+
+    public GameState peek() {
+        if (size == 0) return null;
+        ArrayList<GameState> bucket = lowestBucket();
+        return bucket.get(bucket.size() - 1);
+    }
+
+    private ArrayList<GameState> lowestBucket() {
+        ArrayList<GameState> bucket = buckets.get(minBucket);
+        while (bucket.isEmpty()) {
+            bucket = buckets.get(++minBucket);
+        }
+        return bucket;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    public void clear() {
+        for (ArrayList<GameState> bucket : buckets) {
+            bucket.clear();
+        }
+        size = 0;
+        minBucket = 0;
+    }
+}
@@ -2,60 +2,80 @@
 /**
  * A standard playing card
  *
+ * There are exactly 52 cards (plus the joker used for unparseable input), so every Card is a
+ * shared immutable instance obtained through Card.of / Card.fromIndex rather than built
+ * with new. Each card also has a stable index 0-51 = (suit-1)*13 + (rank-1).
+ *
  * @author Dan DiTursi
  * @version 11 February 2023
  */
-public class Card
+public final class Card
 {
-    private int rank;   // 1-13; 1 = A, 11 = J, 12 = Q, 13 = K
-    private int suit;   // 1 = spade, 2 = heart, 3 = club, 4 = diamond
+    private final int rank;   // 1-13; 1 = A, 11 = J, 12 = Q, 13 = K
+    private final int suit;   // 1 = spade, 2 = heart, 3 = club, 4 = diamond
     // Use 0,0 as a joker. (Note: no jokers in FreeCell)
-    
+    private final int index;  // 0-51; -1 for the joker
+
     public static final String rankString = "-A23456789TJQK";
     public static final String suitString = "-SHCD";
 
-    /**
-     * Constructor for objects of class Card
-     */
-    public Card() {
-        rank = 0;
-        suit = 0;
+    public static final Card JOKER = new Card(0, 0);
+    private static final Card[] DECK = new Card[52];
+    static {
+        for (int s = 1; s <= 4; s++) {
+            for (int r = 1; r <= 13; r++) {
+                Card c = new Card(r, s);
+                DECK[c.index] = c;
+            }
+        }
     }
-    
-    public Card(int r, int s) {
+
+    private Card(int r, int s) {
         rank = r;
         suit = s;
+        index = (r == 0) ? -1 : (s - 1) * 13 + (r - 1);
     }
-    
-    public Card(char r, char s) {
+
+    public static Card of(int r, int s) {
+        if (r < 1 || r > 13 || s < 1 || s > 4) { return JOKER; }
+        return DECK[(s - 1) * 13 + (r - 1)];
+    }
+
+    public static Card of(char r, char s) {
         char r1 = Character.toUpperCase(r);
-        rank = rankString.indexOf(r1);
-        
         char s1 = Character.toUpperCase(s);
-        suit = suitString.indexOf(s1);
-        
-        if (rank == -1 || suit == -1) {
-            rank = 0;
-            suit = 0;
-        }
+        return of(rankString.indexOf(r1), suitString.indexOf(s1));
+    }
+
+    public static Card fromIndex(int i) {
+        return DECK[i];
     }
 
     public int getRank() { return rank; }
     public int getSuit() { return suit; }
     public int getColor() { return (suit % 2); }
-    
+    public int getIndex() { return index; }
+
     public boolean sameColor(Card c2) {
         return (this.getColor() == c2.getColor());
     }
-    
+
     public static boolean sameColor(Card c1, Card c2) {
         return (c1.getColor() == c2.getColor());
     }
-    
-    public boolean equals(Card c2) {
+
+    @Override
+    public boolean equals(Object o) {
+        if (!(o instanceof Card)) return false;
+        Card c2 = (Card) o;
         return ((rank == c2.rank) && (suit == c2.suit));
     }
-    
+
+    @Override
+    public int hashCode() {
+        return index;
+    }
+
     public String toString() {
         return ("" + rankString.charAt(rank) + suitString.charAt(suit));
     }
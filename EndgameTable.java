@@ -0,0 +1,511 @@
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.LongBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+/**
+ * The exact number of moves left to win from every endgame position, meaning every
+ * position with at most maxCards cards left outside the foundations. The table is built
+ * once, by a backward breadth-first search from the won position, and saved to a file.
+ * GameState.h() then reads it from there (see GameState.setEndgameTable).
+ *
+ * A distance counts every move, foundation moves included, just as a state's depth does,
+ * and allows every move isLegalMove does. So it is never more than the solver still has
+ * to do. Auto-play only makes moves that some shortest solution makes anyway.
+ *
+ * Positions are keyed by which cards are left and where each one is. Given the
+ * foundations, the cards left are the top ranks of each suit. So each card is named by
+ * its suit and rank order among those left: its slot, counting in card index order. The
+ * key holds the foundations in bits 0-15. Above them it has six bits per slot: the pile
+ * number and the card's position in the pile, counting up from the bottom, or CELL for
+ * a free cell. Piles are numbered in order of their bottom cards. So, like
+ * GameState.equals, the key doesn't care how piles and cells are arranged. With at most
+ * MAX_CARDS cards left, this fits in a long.
+ *
+ * The file is:
+ *   - the magic "FCPD";
+ *   - maxCards;
+ *   - the number of positions, then an unused int;
+ *   - the keys in ascending order, as longs;
+ *   - the distances, one byte each.
+ * Lookups are a binary search over the mapped file.
+ *
+ * Don't expect much from it on real deals. By the time seven cards are left, auto-play
+ * has usually won the game already. On Microsoft deals 1-30, A* with 200,000 nodes each
+ * made 4.3 million h() evaluations, and only 2,020 of them fell inside a seven-card
+ * table. At every one the estimate was already exact, so each deal was solved with the
+ * same moves and the same number of expansions as without the table. Over 20,000 random
+ * seven-card positions the table changed h() for 0.5% of them, nearly always lowering an
+ * estimate that was too high. Nor can the key leave out the foundations to cover more
+ * positions: which cards are left fixes them.
+ *
+ * Run as a program to build a table:
+ *   java EndgameTable [maxCards] [file]      (defaults: 6 and endgame.fcpd)
+ * Six cards take a few seconds and 7 MB. Seven cards take about half a minute, 90 MB on
+ * disk and around 400 MB of heap while building.
+ *
+ * @author Van Griffith
+ * @version 18 October 2026
+ */
+public class EndgameTable
+{
+    public static final int MAX_CARDS = 7;
+
+    private static final int MAGIC = 0x46435044;  // "FCPD"
+    private static final int HEADER_SIZE = 16;
+    private static final int CELL = 7;            // never a position in a pile of at most 7 cards
+    private static final int WON = 0xDDDD;        // the key of the won position: nothing left
+
+    private final int maxCards;
+    private final int count;
+    private final LongBuffer keys;
+    private final ByteBuffer distances;
+
+    private EndgameTable(int maxCards, int count, LongBuffer keys, ByteBuffer distances) {
+        this.maxCards = maxCards;
+        this.count = count;
+        this.keys = keys;
+        this.distances = distances;
+    }
+
+    public static EndgameTable open(String filename) throws IOException {
+        Path path = Paths.get(filename);
+        if (!path.toFile().isFile()) {
+            throw new FileNotFoundException(filename);
+        }
+        try (FileChannel ch = FileChannel.open(path, StandardOpenOption.READ)) {
+            if (ch.size() < HEADER_SIZE) {
+                throw new IOException(filename + " is too short to be an endgame table");
+            }
+            MappedByteBuffer map = ch.map(FileChannel.MapMode.READ_ONLY, 0, ch.size());
+            int maxCards = map.getInt(4);
+            int count = map.getInt(8);
+            if (map.getInt(0) != MAGIC || maxCards < 0 || maxCards > MAX_CARDS) {
+                throw new IOException(filename + " is not an endgame table");
+            }
+            if (ch.size() != HEADER_SIZE + 9L * count) {
+                throw new IOException(filename + " is truncated or has trailing bytes");
+            }
+            map.position(HEADER_SIZE);
+            LongBuffer keys = map.slice().asLongBuffer();
+            keys.limit(count);
+            map.position(HEADER_SIZE + 8 * count);
+            return new EndgameTable(maxCards, count, keys, map.slice());
+        }
+    }
+
+    // Positions with this many cards left or fewer are in the table
+    public int getMaxCards() { return maxCards; }
+
+    public int size() { return count; }
+
+    /**
+     * The exact number of moves to win from the given position, or -1 if it isn't in the
+     * table. Takes the position piecemeal so GameState doesn't have to hand over its board:
+     * foundations packed as in GameState, the first numCells entries of cells, and for each
+     * pile the first sizes[pile] entries of piles[pile], bottom card first.
+     */
+    public int distance(int foundations, int[] cells, int numCells, int[][] piles, int[] sizes) {
+        if (cardsLeft(foundations) > maxCards) return -1;
+        long key = key(foundations, cells, numCells, piles, sizes, SCRATCH.get());
+        int lo = 0;
+        int hi = count - 1;
+        while (lo <= hi) {
+            int mid = (lo + hi) >>> 1;
+            long k = keys.get(mid);
+            if (k < key) lo = mid + 1;
+            else if (k > key) hi = mid - 1;
+            else return distances.get(mid) & 0xFF;
+        }
+        return -1;
+    }
+
+    private static int cardsLeft(int foundations) {
+        int left = 52;
+        for (int suit = 1; suit <= 4; suit++) {
+            left -= (foundations >>> (4 * (suit-1))) & 0xF;
+        }
+        return left;
+    }
+
+    // Working space for key. GameState looks up every state it makes near the end of a game,
+    // so each thread keeps one set of these rather than allocating them each time.
+    private static final class KeyScratch
+    {
+        final int[] base = new int[5];
+        final int[] order = new int[8];
+    }
+
+    private static final ThreadLocal<KeyScratch> SCRATCH = ThreadLocal.withInitial(KeyScratch::new);
+
+    // See the class comment. The position must have at most MAX_CARDS cards left.
+    private static long key(int foundations, int[] cells, int numCells, int[][] piles, int[] sizes,
+                            KeyScratch scratch) {
+        // slot of card c is base[suit] + c % 13
+        int[] base = scratch.base;
+        int left = 0;
+        for (int suit = 1; suit <= 4; suit++) {
+            int played = (foundations >>> (4 * (suit-1))) & 0xF;
+            base[suit] = left - played;
+            left += 13 - played;
+        }
+        long key = foundations;
+        for (int i = 0; i < numCells; i++) {
+            key |= (long) CELL << shift(cells[i], base);
+        }
+        int[] order = scratch.order;
+        int numPiles = 0;
+        for (int pile = 0; pile < 8; pile++) {
+            if (sizes[pile] > 0) order[numPiles++] = (piles[pile][0] << 3) | pile;
+        }
+        Arrays.sort(order, 0, numPiles);
+        for (int i = 0; i < numPiles; i++) {
+            int pile = order[i] & 7;
+            for (int pos = 0; pos < sizes[pile]; pos++) {
+                key |= (long) ((i << 3) | pos) << shift(piles[pile][pos], base);
+            }
+        }
+        return key;
+    }
+
+    private static int shift(int c, int[] base) {
+        return 16 + 6 * (base[c / 13 + 1] + c % 13);
+    }
+
+    /**
+     * Finds the distance of every position with at most maxCards cards left and writes the
+     * table to filename.
+     */
+    public static void build(int maxCards, String filename) throws IOException {
+        if (maxCards < 0 || maxCards > MAX_CARDS) {
+            throw new IllegalArgumentException("maxCards must be 0 to " + MAX_CARDS + ": " + maxCards);
+        }
+        Builder builder = new Builder(maxCards);
+        builder.run();
+        long[] sorted = builder.keys();
+        Arrays.sort(sorted);
+
+        try (FileChannel ch = FileChannel.open(Paths.get(filename), StandardOpenOption.CREATE,
+                                               StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            ByteBuffer buf = ByteBuffer.allocateDirect(1 << 16);
+            buf.putInt(MAGIC).putInt(maxCards).putInt(sorted.length).putInt(0);
+            for (long key : sorted) {
+                if (buf.remaining() < 8) drain(buf, ch);
+                buf.putLong(key);
+            }
+            for (long key : sorted) {
+                if (!buf.hasRemaining()) drain(buf, ch);
+                buf.put((byte) builder.distance(key));
+            }
+            drain(buf, ch);
+        }
+    }
+
+    private static void drain(ByteBuffer buf, FileChannel ch) throws IOException {
+        buf.flip();
+        while (buf.hasRemaining()) {
+            ch.write(buf);
+        }
+        buf.clear();
+    }
+
+    /**
+     * An endgame position the builder can take apart and put back together quickly. Piles
+     * keep their cards bottom first; neither piles nor cells are kept in any order.
+     */
+    private static class Position
+    {
+        int foundations;
+        final int[] cells = new int[4];
+        int numCells;
+        final int[][] piles = new int[8][MAX_CARDS + 1];
+        final int[] sizes = new int[8];
+        final KeyScratch scratch = new KeyScratch();
+
+        void decode(long key) {
+            foundations = (int) (key & 0xFFFF);
+            numCells = 0;
+            Arrays.fill(sizes, 0);
+            int slot = 0;
+            for (int suit = 1; suit <= 4; suit++) {
+                for (int rank = played(suit) + 1; rank <= 13; rank++) {
+                    int loc = (int) (key >>> (16 + 6 * slot++)) & 0x3F;
+                    int c = (suit-1) * 13 + rank - 1;
+                    if (loc == CELL) {
+                        cells[numCells++] = c;
+                    }
+                    else {
+                        int pile = loc >>> 3;
+                        int pos = loc & 7;
+                        piles[pile][pos] = c;
+                        sizes[pile] = Math.max(sizes[pile], pos + 1);
+                    }
+                }
+            }
+        }
+
+        long key() {
+            return EndgameTable.key(foundations, cells, numCells, piles, sizes, scratch);
+        }
+
+        int played(int suit) {
+            return (foundations >>> (4 * (suit-1))) & 0xF;
+        }
+
+        int top(int pile) {
+            return piles[pile][sizes[pile] - 1];
+        }
+
+        // The first empty pile, or -1 if there is none
+        int emptyPile() {
+            for (int pile = 0; pile < 8; pile++) {
+                if (sizes[pile] == 0) return pile;
+            }
+            return -1;
+        }
+
+        int emptyPiles() {
+            int empty = 0;
+            for (int pile = 0; pile < 8; pile++) {
+                if (sizes[pile] == 0) empty++;
+            }
+            return empty;
+        }
+
+        // How many cards at the top of the pile form a descending, alternating-colour sequence
+        int runLength(int pile) {
+            int run = Math.min(sizes[pile], 1);
+            while (run < sizes[pile] && stacks(piles[pile][sizes[pile] - run],
+                                               piles[pile][sizes[pile] - run - 1])) {
+                run++;
+            }
+            return run;
+        }
+    }
+
+    // Whether card c can go on card below in the tableau
+    private static boolean stacks(int c, int below) {
+        return below % 13 == c % 13 + 1 && (below / 13) % 2 != (c / 13) % 2;
+    }
+
+    /**
+     * The backward search. Layer d holds every position whose shortest way to a win takes d
+     * moves. The positions one move before them that aren't in an earlier layer make up
+     * layer d+1. Working back from a position means undoing each kind of move isLegalMove
+     * allows, in every way that move could have been legal.
+     */
+    private static class Builder
+    {
+        private final int maxCards;
+        // Open-addressing table of every position found so far, with its distance; 0 is
+        // never a key, since the foundations of an endgame position are never all empty.
+        private long[] table = new long[1 << 12];
+        private byte[] dist = new byte[1 << 12];
+        private int size;
+        private long[] next = new long[1 << 10];
+        private int nextSize;
+        private int depth;
+
+        Builder(int maxCards) {
+            this.maxCards = maxCards;
+        }
+
+        void run() {
+            long[] layer = { WON };
+            int layerSize = 1;
+            insert(WON, 0);
+            Position p = new Position();
+            for (depth = 1; layerSize > 0; depth++) {
+                nextSize = 0;
+                for (int i = 0; i < layerSize; i++) {
+                    p.decode(layer[i]);
+                    addPredecessors(p);
+                }
+                long[] done = layer;
+                layer = next;
+                layerSize = nextSize;
+                next = done;
+            }
+        }
+
+        long[] keys() {
+            long[] keys = new long[size];
+            int n = 0;
+            for (long key : table) {
+                if (key != 0) keys[n++] = key;
+            }
+            return keys;
+        }
+
+        int distance(long key) {
+            int i = find(key);
+            return (table[i] == key) ? dist[i] : -1;
+        }
+
+        private int find(long key) {
+            int mask = table.length - 1;
+            int i = (int) (key ^ (key >>> 29) ^ (key >>> 47)) * 0x9E3779B9 & mask;
+            while (table[i] != 0 && table[i] != key) {
+                i = (i + 1) & mask;
+            }
+            return i;
+        }
+
+        // Adds the key if it is new; returns whether it was
+        private boolean insert(long key, int d) {
+            int i = find(key);
+            if (table[i] == key) return false;
+            table[i] = key;
+            dist[i] = (byte) d;
+            if (++size * 2 > table.length) grow();
+            return true;
+        }
+
+        private void grow() {
+            long[] oldTable = table;
+            byte[] oldDist = dist;
+            table = new long[2 * oldTable.length];
+            dist = new byte[2 * oldTable.length];
+            for (int j = 0; j < oldTable.length; j++) {
+                if (oldTable[j] == 0) continue;
+                int i = find(oldTable[j]);
+                table[i] = oldTable[j];
+                dist[i] = oldDist[j];
+            }
+        }
+
+        private void emit(Position p) {
+            long key = p.key();
+            if (insert(key, depth)) {
+                if (nextSize == next.length) next = Arrays.copyOf(next, 2 * nextSize);
+                next[nextSize++] = key;
+            }
+        }
+
+        // Every position one legal move away from p. p is left as it was.
+        private void addPredecessors(Position p) {
+            int left = cardsLeft(p.foundations);
+            int freeCells = 4 - p.numCells;
+
+            // A card went to its foundation from a cell or from the top of a pile.
+            if (left < maxCards) {
+                for (int suit = 1; suit <= 4; suit++) {
+                    int played = p.played(suit);
+                    if (played == 0) continue;
+                    int c = (suit-1) * 13 + played - 1;
+                    p.foundations -= 1 << (4 * (suit-1));
+                    if (freeCells > 0) {
+                        p.cells[p.numCells++] = c;
+                        emit(p);
+                        p.numCells--;
+                    }
+                    putOnEachPile(p, c, -1, true);
+                    p.foundations += 1 << (4 * (suit-1));
+                }
+            }
+
+            // A card went into a cell from the top of a pile.
+            for (int i = 0; i < p.numCells; i++) {
+                int c = p.cells[i];
+                p.cells[i] = p.cells[--p.numCells];
+                putOnEachPile(p, c, -1, true);
+                p.cells[p.numCells++] = p.cells[i];
+                p.cells[i] = c;
+            }
+
+            // A single card went onto a pile, from a cell or another pile: onto an empty
+            // pile, or onto a card it stacks on.
+            for (int d = 0; d < 8; d++) {
+                int size = p.sizes[d];
+                if (size == 0) continue;
+                int c = p.top(d);
+                if (size > 1 && !stacks(c, p.piles[d][size - 2])) continue;
+                p.sizes[d]--;
+                if (freeCells > 0) {
+                    p.cells[p.numCells++] = c;
+                    emit(p);
+                    p.numCells--;
+                }
+                // From one empty pile to another changes nothing, so skip that.
+                putOnEachPile(p, c, d, size > 1);
+                p.sizes[d]++;
+            }
+
+            // A sequence of two or more went from one pile to another. Its cards are still
+            // in piles[d] past the pile's size while it is lifted off.
+            int empty = p.emptyPiles();
+            for (int d = 0; d < 8; d++) {
+                int size = p.sizes[d];
+                int run = p.runLength(d);
+                for (int n = 2; n <= run; n++) {
+                    boolean destWasEmpty = (size == n);
+                    if (!destWasEmpty && !stacks(p.piles[d][size - n], p.piles[d][size - n - 1])) continue;
+                    p.sizes[d] -= n;
+                    // maxRun before the move: free cells + 1, doubled per empty pile other than the destination
+                    int emptyBefore = empty + (destWasEmpty ? 1 : 0);
+                    int mostFromPile = (freeCells + 1) << (destWasEmpty ? emptyBefore - 1 : emptyBefore);
+                    if (n <= mostFromPile) {
+                        for (int q = 0; q < 8; q++) {
+                            if (q == d || p.sizes[q] == 0) continue;
+                            moveRun(p, d, q, n);
+                            emit(p);
+                            p.sizes[q] -= n;
+                        }
+                    }
+                    int q = p.emptyPile();
+                    // A whole pile moved to an empty one changes nothing
+                    if (!destWasEmpty && q >= 0 && n <= (freeCells + 1) << (empty - 1)) {
+                        moveRun(p, d, q, n);
+                        emit(p);
+                        p.sizes[q] -= n;
+                    }
+                    p.sizes[d] += n;
+                }
+            }
+        }
+
+        // Emits p with card c on top of each non-empty pile but except, and on an empty
+        // pile too if toEmpty is set. p is left as it was.
+        private void putOnEachPile(Position p, int c, int except, boolean toEmpty) {
+            for (int q = 0; q < 8; q++) {
+                if (q == except || p.sizes[q] == 0) continue;
+                p.piles[q][p.sizes[q]++] = c;
+                emit(p);
+                p.sizes[q]--;
+            }
+            int q = p.emptyPile();
+            if (toEmpty && q >= 0 && q != except) {
+                p.piles[q][p.sizes[q]++] = c;
+                emit(p);
+                p.sizes[q]--;
+            }
+        }
+
+        // Copies the n lifted cards just past the top of pile from onto pile to
+        private static void moveRun(Position p, int from, int to, int n) {
+            System.arraycopy(p.piles[from], p.sizes[from], p.piles[to], p.sizes[to], n);
+            p.sizes[to] += n;
+        }
+    }
+
+    public static void main(String[] args) {
+        int maxCards = (args.length > 0) ? Integer.parseInt(args[0]) : 6;
+        String filename = (args.length > 1) ? args[1] : "endgame.fcpd";
+        try {
+            long start = System.nanoTime();
+            build(maxCards, filename);
+            EndgameTable table = open(filename);
+            System.out.printf("Wrote %,d positions with up to %d cards left to %s in %.1f s%n",
+                              table.size(), maxCards, filename, (System.nanoTime() - start) / 1e9);
+        }
+        catch (IOException | IllegalArgumentException e) {
+            System.err.println("could not build the endgame table: " + e.getMessage());
+        }
+    }
+}
@@ -1,6 +1,7 @@
 import java.io.FileNotFoundException;
 import java.util.ArrayList;
-import java.util.PriorityQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
 
 /**
  * Driver class for the Freecell game.
@@ -24,35 +25,195 @@ public class FreeCell
             System.err.println("File Not Found, using random gamestate");
         }
         
+        int threads = 1;
+        if (args.length > 1) threads = Integer.parseInt(args[1]);
+
         game.display();
         System.out.println("\nSolving...");
-        Action.dumpToFile(solve(game), "actions.txt");
+        Action.dumpToFile(solve(game, threads), "actions.txt");
+    }
+
+    // Same contract as solve(start), but spreads the search over the given number of threads.
+    public static ArrayList<Action> solve(GameState start, int threads) {
+        if (threads <= 1) return solve(start);
+        SearchStats stats = new SearchStats();
+        stats.reportProgress(System.err, PROGRESS_INTERVAL_MILLIS);
+        ArrayList<Action> actions = new ParallelSolver(threads).search(start, Long.MAX_VALUE, Long.MAX_VALUE,
+                                                                        stats);
+        report(actions, stats);
+        return actions;
     }
 
     public static ArrayList<Action> solve(GameState start) {
-        PriorityQueue<GameState> pQueue = new PriorityQueue<GameState>();
-        pQueue.offer(start);
-        try {
-            while (!pQueue.isEmpty()) {
-                GameState gs = pQueue.poll();
-                if (gs.isWin()) {
-                    ArrayList<Action> actions = gs.returnedActions;
-                    System.out.printf("You won in %d moves!%n", actions.size());
-                    return actions;
+        return solve(start, SearchMode.ASTAR, 0);
+    }
+
+    // beamWidth is only used by SearchMode.BEAM.
+    public static ArrayList<Action> solve(GameState start, SearchMode mode, int beamWidth) {
+        return solveWithStats(start, mode, beamWidth).getActions();
+    }
+
+    // How often solve prints a progress line while it searches.
+    private static final long PROGRESS_INTERVAL_MILLIS = 5000;
+
+    /**
+     * Same as solve(start, mode, beamWidth), but also hands back the counters of the search.
+     * Prints a progress line to System.err every few seconds while it runs, and a summary
+     * of the counters at the end.
+     */
+    public static SolveResult solveWithStats(GameState start, SearchMode mode, int beamWidth) {
+        SearchStats stats = new SearchStats();
+        stats.reportProgress(System.err, PROGRESS_INTERVAL_MILLIS);
+        ArrayList<Action> actions = search(start, mode, beamWidth, Long.MAX_VALUE, Long.MAX_VALUE, stats);
+        report(actions, stats);
+        return new SolveResult(actions, stats);
+    }
+
+    // What solve prints once the search is over
+    private static void report(ArrayList<Action> actions, SearchStats stats) {
+        if (stats.outcome == SearchStats.Outcome.SOLVED) {
+            System.out.printf("You won in %d moves!%n", actions.size());
+        }
+        else if (stats.outcome == SearchStats.Outcome.OUT_OF_MEMORY) {
+            System.err.println("OutOfMemory :(\nReturning empty ArrayList");
+        }
+        else {
+            System.out.println("Solution not found :(\nReturning empty ArrayList");
+        }
+        System.err.println(stats);
+    }
+
+    public static ArrayList<Action> search(GameState start, SearchMode mode, int beamWidth,
+                                           long nodeLimit, long timeLimitMillis, SearchStats stats) {
+        return search(start, mode, beamWidth, nodeLimit, timeLimitMillis, stats, null);
+    }
+
+    /**
+     * Same as above, but first asks cache (if not null) whether it already knows how the
+     * search would end, and afterwards tells it what was found. A* also checks it for every
+     * position before expanding it.
+     */
+    public static ArrayList<Action> search(GameState start, SearchMode mode, int beamWidth,
+                                           long nodeLimit, long timeLimitMillis, SearchStats stats,
+                                           SolutionCache cache) {
+        if (cache != null) {
+            SolutionCache.Entry known = cache.lookup(start);
+            // A node budget only means something to A*, which is what recorded it.
+            if (known != null && (known.isSolved() || known.isUnsolvable()
+                                  || (mode == SearchMode.ASTAR && known.getNodeBudget() >= nodeLimit))) {
+                return fromCache(known, mode, stats);
+            }
+        }
+        ArrayList<Action> actions;
+        switch (mode) {
+            case IDA_STAR:
+                actions = BoundedSearch.idaStar(start, nodeLimit, timeLimitMillis, stats);
+                break;
+            case BEAM:
+                actions = BoundedSearch.beam(start, beamWidth, nodeLimit, timeLimitMillis, stats);
+                break;
+            case ANYTIME:
+                actions = BestFirstSearch.anytime(start, nodeLimit, timeLimitMillis, stats, null);
+                break;
+            default:
+                actions = BestFirstSearch.aStar(start, nodeLimit, timeLimitMillis, stats, cache);
+        }
+        if (cache != null) {
+            if (stats.outcome == SearchStats.Outcome.SOLVED) {
+                cache.storeSolution(start, actions);
+            }
+            // Beam search can run dry without there being no solution, so only trust the others.
+            else if (stats.outcome == SearchStats.Outcome.UNSOLVABLE && mode != SearchMode.BEAM) {
+                cache.storeNoSolution(start, Long.MAX_VALUE);
+            }
+            else if (stats.outcome == SearchStats.Outcome.NODE_LIMIT && mode == SearchMode.ASTAR) {
+                cache.storeNoSolution(start, nodeLimit);
+            }
+        }
+        return actions;
+    }
+
+    /**
+     * Runs search(start, mode, beamWidth, nodeLimit, timeLimitMillis, ...) as a task on
+     * executor and returns a future for its result. The time limit counts from this call, so
+     * time spent waiting in the executor's queue is part of it; a task that only gets to run
+     * after the deadline completes at once with the outcome TIME_LIMIT.
+     *
+     * Cancelling the future stops the search within an expansion or so. So does interrupting
+     * the thread it is running on (as ExecutorService.shutdownNow does), which leaves the
+     * future cancelled as well. Any executor will do, one that starts a virtual thread per
+     * task included.
+     */
+    public static CompletableFuture<SolveResult> solveAsync(GameState start, SearchMode mode, int beamWidth,
+                                                            long nodeLimit, long timeLimitMillis,
+                                                            Executor executor) {
+        return solveAsync(start, mode, beamWidth, nodeLimit, timeLimitMillis, null, executor);
+    }
+
+    // Same as above, but the search goes through cache (if not null) as in search.
+    public static CompletableFuture<SolveResult> solveAsync(GameState start, SearchMode mode, int beamWidth,
+                                                            long nodeLimit, long timeLimitMillis,
+                                                            SolutionCache cache, Executor executor) {
+        long deadline = (timeLimitMillis == Long.MAX_VALUE) ? Long.MAX_VALUE
+                                                             : System.nanoTime() + timeLimitMillis * 1000000;
+        SearchStats stats = new SearchStats();
+        CompletableFuture<SolveResult> future = new CompletableFuture<SolveResult>();
+        future.whenComplete((result, e) -> {
+            if (future.isCancelled()) stats.cancel();
+        });
+        Runnable task = () -> {
+            if (future.isDone()) return;
+            try {
+                ArrayList<Action> actions;
+                long millisLeft = (deadline == Long.MAX_VALUE) ? Long.MAX_VALUE
+                                                               : (deadline - System.nanoTime()) / 1000000;
+                if (millisLeft > 0) {
+                    actions = search(start, mode, beamWidth, nodeLimit, millisLeft, stats, cache);
                 }
                 else {
-                    ArrayList<Action> actions = gs.getLegalActions();
-                    for (Action a: actions) {
-                        GameState nexState = gs.nextState(a);
-                        if(!pQueue.contains(nexState)) pQueue.offer(nexState);
-                    }
+                    actions = new ArrayList<Action>();
+                    stats.begin(mode);
+                    stats.outcome = SearchStats.Outcome.TIME_LIMIT;
+                    stats.end(0, 0);
                 }
+                if (stats.outcome == SearchStats.Outcome.CANCELLED) future.cancel(false);
+                else future.complete(new SolveResult(actions, stats));
+            } catch (Throwable e) {
+                future.completeExceptionally(e);
             }
-            System.out.println("Solution not found :(\nReturning empty ArrayList");
-            return new ArrayList<Action>();
-        } catch (OutOfMemoryError e) {
-            System.err.println("OutOfMemory :(\nReturning empty ArrayList");
-            return new ArrayList<Action>();
+        };
+        try {
+            executor.execute(task);
+        } catch (RuntimeException e) {
+            future.completeExceptionally(e);
+        }
+        return future;
+    }
+
+    // Fills in stats as if the search had run and ended the way the cache says it did.
+    private static ArrayList<Action> fromCache(SolutionCache.Entry known, SearchMode mode, SearchStats stats) {
+        stats.begin(mode);
+        stats.cacheHits++;
+        ArrayList<Action> actions = new ArrayList<Action>();
+        if (known.isSolved()) {
+            actions = known.getPath();
+            stats.outcome = SearchStats.Outcome.SOLVED;
+            stats.solutionLength = actions.size();
+        }
+        else if (!known.isUnsolvable()) {
+            stats.outcome = SearchStats.Outcome.NODE_LIMIT;
         }
+        stats.end(0, 0);
+        return actions;
+    }
+
+    /**
+     * A* search that gives up after expanding nodeLimit states or after timeLimitMillis of
+     * wall-clock time. Prints nothing; how the search ended and how much work it took are
+     * recorded in stats. Returns the solution, or an empty list if there is none.
+     */
+    public static ArrayList<Action> search(GameState start, long nodeLimit, long timeLimitMillis,
+                                           SearchStats stats) {
+        return BestFirstSearch.aStar(start, nodeLimit, timeLimitMillis, stats, null);
     }
 }
@@ -1,327 +1,864 @@
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
-import java.io.File;
-import java.util.Scanner;
+import java.util.Random;
+import java.io.BufferedReader;
+import java.io.FileReader;
 import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.io.FileWriter;
+import java.io.StringReader;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
 
 /**
  * Contains the state of a FreeCell game
  *
+ * The whole board lives in one 64-byte array (see the layout constants below) with each
+ * card stored as its Card index 0-51, and the four foundations packed into a single int,
+ * so a state costs a fraction of what lists of Card objects would.
+ *
  * @author Dan DiTursi, Van Griffith
  * @version 23 February 2023
  */
 public class GameState implements Comparable<GameState>
 {
-    // instance variables - replace the example below with your own
-    private ArrayList<Card> cells; // Numbered from 0-3; empty cells will always be last
+    // Layout of board[]:
+    //   [0-7]   number of cards in each tableau pile (in actions, numbered 1-8; we adjust the -1 manually)
+    //   [8-11]  free cells, numbered 0-3; empty cells will always be last
+    //   [12-63] tableau cards, pile 1 first, each pile from bottom to top
+    private static final int PILE_SIZES = 0;
+    private static final int CELLS = 8;
+    private static final int CARDS = 12;
+    private static final int BOARD_SIZE = 64;
+    private static final byte NO_CARD = -1;
+
+    // Cards are stored by Card.getIndex(); these tables save a lookup through Card in hot loops.
+    private static final byte[] RANK = new byte[52];
+    private static final byte[] SUIT = new byte[52];
+    // For each card, the cards of its suit with lower ranks, which must all reach the
+    // foundation before it can; as a mask with bit i set for the card with index i.
+    private static final long[] LOWER = new long[52];
+    static {
+        for (int i = 0; i < 52; i++) {
+            RANK[i] = (byte) Card.fromIndex(i).getRank();
+            SUIT[i] = (byte) Card.fromIndex(i).getSuit();
+            LOWER[i] = ((1L << (RANK[i]-1)) - 1) << (13 * (SUIT[i]-1));
+        }
+    }
+
+    private byte[] board;
     private int numCellsFree;
-    private ArrayList<ArrayList<Card>> tableau; // In actions, numbered 1-8; we adjust the -1 manually.
-    private int[] foundations = {0,0,0,0,0}; // We'll ignore the first one.
+    private int foundations; // 4 bits per suit; suit s lives in bits 4(s-1) to 4(s-1)+3
     private int score;
-    ArrayList<Action> returnedActions;
+    private int heuristic;     // cached h(); see updateHeuristic
+    private long pileBlockers; // blocker count of each tableau pile, 8 bits per pile
+
+    // Search bookkeeping: instead of each state carrying its full move list, it remembers the
+    // state it came from and the one move that got it here, followed by any foundation
+    // moves autoPlay made for free (null if none), all packed by Action.encode.
+    // getActions() rebuilds the path.
+    private GameState parent;
+    private int lastMove;
+    private int[] autoMoves;
+    private int depth; // number of actions taken from the starting state
+    private int hash;  // cached hashCode(), 0 until computed
 
     /**
      * Creates a random deal
      */
     public GameState()
     {
-        returnedActions = new ArrayList<Action>(1);
-        cells = new ArrayList<Card>(4);
+        this(new Random());
+    }
+
+    /**
+     * Creates a random deal shuffled by rng, so the same seed always gives the same deal
+     */
+    public GameState(Random rng)
+    {
+        board = emptyBoard();
         numCellsFree = 4;
-        tableau = new ArrayList<ArrayList<Card>>(8);
-        
-        ArrayList<Card> deck = new ArrayList<Card>(52);
+
+        ArrayList<Byte> deck = new ArrayList<Byte>(52);
         int i,j,k;
-        for (i = 1; i <= 13; i++) {
-            for (j = 1; j <= 4; j++) {
-                deck.add(new Card(i,j));
-            }
+        for (i = 0; i < 52; i++) {
+            deck.add((byte) i);
         }
-        Collections.shuffle(deck);
-        
+        Collections.shuffle(deck, rng);
+
+        int pos = CARDS;
         for (i = 0; i < 8; i++) {
-            ArrayList<Card> current = new ArrayList<Card>();
             k = i<4 ? 7 : 6;    // first four piles get 7 cards; last four get 6 cards
             for (j = 0; j < k; j++) {
-                current.add(deck.remove(0));
+                board[pos++] = deck.remove(0);
             }
-            tableau.add(current);
+            board[PILE_SIZES + i] = (byte) k;
         }
 
+        this.recomputeHeuristic();
         this.setScore();
     }
-    
+
     public GameState(GameState gs) {
-        cells = new ArrayList<Card>(4);
-        for (Card c : gs.cells) { cells.add(c); }
-        
+        board = gs.board.clone();
         numCellsFree = gs.numCellsFree;
-        tableau = new ArrayList<ArrayList<Card>>(8);
-        
-        for (int i = 0; i < 8; i++) {
-            ArrayList<Card> current = new ArrayList<Card>();
-            ArrayList<Card> pile = gs.tableau.get(i);
-            for (Card c : pile) { current.add(c); }
-            tableau.add(current);
+        foundations = gs.foundations;
+        heuristic = gs.heuristic;
+        pileBlockers = gs.pileBlockers;
+
+        parent = gs.parent;
+        lastMove = gs.lastMove;
+        autoMoves = gs.autoMoves;
+        depth = gs.depth;
+        hash = gs.hash;
+
+        this.setScore();
+    }
+
+    // Suits in the order the Microsoft deck is sorted within each rank: clubs, diamonds,
+    // hearts, spades
+    private static final int[] MS_SUITS = { 3, 4, 2, 1 };
+
+    /**
+     * The classic Microsoft FreeCell deal with the given number, 1 to 32000 in the original
+     * game though any positive number works. Shuffled with the same linear congruential
+     * generator as the Microsoft C runtime's rand(), so deal n here is deal n in Windows.
+     */
+    public static GameState microsoftDeal(int dealNumber)
+    {
+        if (dealNumber < 1) {
+            throw new IllegalArgumentException("Microsoft deal numbers start at 1, not " + dealNumber);
+        }
+        // Sorted by rank, then by suit within each rank
+        int[] deck = new int[52];
+        for (int i = 0; i < 52; i++) {
+            deck[i] = Card.of(i/4 + 1, MS_SUITS[i%4]).getIndex();
+        }
+        // Draw a card at random from what's left and fill the hole with the last card
+        int[] dealt = new int[52];
+        long seed = dealNumber;
+        for (int left = 52; left > 0; left--) {
+            seed = (seed * 214013 + 2531011) & 0x7FFFFFFF;
+            int j = (int) (seed >> 16) % left;
+            dealt[52 - left] = deck[j];
+            deck[j] = deck[left - 1];
         }
+        return new GameState(dealt);
+    }
 
-        for (int i = 0; i < 5; i++) {
-            foundations[i] = gs.foundations[i];
+    // Deals the cards out a row at a time, left to right, as the cards would land on a table
+    private GameState(int[] dealt)
+    {
+        board = emptyBoard();
+        numCellsFree = 4;
+
+        int pos = CARDS;
+        for (int i = 0; i < 8; i++) {
+            int k = 0;
+            for (int j = i; j < 52; j += 8) {
+                board[pos++] = (byte) dealt[j];
+                k++;
+            }
+            board[PILE_SIZES + i] = (byte) k;
         }
-        
-        returnedActions = new ArrayList<Action>(gs.returnedActions.size() + 1);
-        returnedActions.addAll(gs.returnedActions);
 
+        this.recomputeHeuristic();
         this.setScore();
     }
-    
+
     // Note: input string must be full file path, unless file is in current working directory
     public GameState(String filename) throws FileNotFoundException {
-        File f = new File(filename);
-        Scanner sc = new Scanner(f);
-        
-        String s1 = sc.nextLine();
-        String[] S = s1.split(" ");
+        this(new BufferedReader(new FileReader(filename)));
+    }
+
+    // Reads a position in the text format written by toString()
+    public static GameState fromString(String text) {
+        return new GameState(new BufferedReader(new StringReader(text)));
+    }
+
+    // Reads a position in the text format written by toString(), and closes the reader
+    private GameState(BufferedReader in) {
+        try (BufferedReader sc = in) {
+            readText(sc);
+        }
+        catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        this.recomputeHeuristic();
+        this.setScore();
+    }
+
+    // Throws IllegalArgumentException unless the text is a whole, consistent position: every
+    // foundation 0 to 13, the cards in the cells and piles exactly those not yet played,
+    // each once, and no pile able to outgrow the binary format.
+    private void readText(BufferedReader sc) throws IOException {
+        board = emptyBoard();
+
+        String s1 = sc.readLine();
+        String[] S = s1.trim().split("\\s+");
         for (int i = 1; i <=4; i++) {
-            foundations[i] = Integer.parseInt(S[i-1]);
+            int played = Integer.parseInt(S[i-1]);
+            if (played < 0 || played > 13) {
+                throw new IllegalArgumentException("bad position: foundation " + played);
+            }
+            foundations |= played << (4 * (i-1));
         }
-        
-        cells = new ArrayList<Card>(4);
-        String s2 = sc.nextLine();
-        S = s2.split(" ");
+
+        String s2 = sc.readLine();
+        S = s2.trim().split("\\s+");
         numCellsFree = Integer.parseInt(S[0]);
+        if (numCellsFree < 0 || numCellsFree > 4 || S.length != 1 + 4 - numCellsFree) {
+            throw new IllegalArgumentException("bad position: cells line \"" + s2 + "\"");
+        }
+        long seen = 0;
         for (int i = 0; i < (4 - numCellsFree); i++) {
-            String s3 = S[i+1];
-            cells.add(new Card(s3.charAt(0),s3.charAt(1)));
+            int c = readCard(S[i+1], seen);
+            seen |= 1L << c;
+            board[CELLS + i] = (byte) c;
         }
-        
-        tableau = new ArrayList<ArrayList<Card>>(8);
+
+        int pos = CARDS;
         for (int i = 0; i < 8; i++) {
-            ArrayList<Card> pile = new ArrayList<Card>();
-            String s4 = sc.nextLine();
-            S = s4.split(" ");
+            String s4 = sc.readLine();
+            S = s4.trim().split("\\s+");
             if (!S[0].equals("--")) {
                 for (int j = 0; j < S.length; j++) {
-                    pile.add(new Card(S[j].charAt(0),S[j].charAt(1)));
+                    int c = readCard(S[j], seen);
+                    seen |= 1L << c;
+                    board[pos++] = (byte) c;
+                    // A pile only grows by a run stacked on one of its cards, so this is as
+                    // tall as it can get from here; writeBinary has room for no more.
+                    if (j + RANK[c] > MAX_BINARY_PILE) {
+                        throw new IllegalArgumentException("bad position: pile " + (i+1) + " could grow too tall");
+                    }
                 }
+                board[PILE_SIZES + i] = (byte) S.length;
             }
-            tableau.add(pile);
         }
-        returnedActions = new ArrayList<Action>(1);
-        this.setScore();
-        sc.close();
-    }
-    
-    // Note: Modifies internal state; no "undo" available
-    private boolean executeAction(Action a) {
-        if (!isLegalAction(a)) { return false; }
-        Card c;
-        if (a.fromCell()) {
-            c = cells.remove(a.get_src_pile());
+
+        for (int c = 0; c < 52; c++) {
+            boolean played = RANK[c] <= foundation(SUIT[c]);
+            if (played == ((seen & (1L << c)) != 0)) {
+                throw new IllegalArgumentException("bad position: " + Card.fromIndex(c)
+                                                   + (played ? " is on its foundation and in play"
+                                                             : " is missing"));
+            }
+        }
+    }
+
+    // The index of the card named by token, which must not be one of the cards in seen
+    private static int readCard(String token, long seen) {
+        Card card = (token.length() == 2) ? Card.of(token.charAt(0), token.charAt(1)) : Card.JOKER;
+        if (card == Card.JOKER) {
+            throw new IllegalArgumentException("bad position: no such card \"" + token + "\"");
+        }
+        if ((seen & (1L << card.getIndex())) != 0) {
+            throw new IllegalArgumentException("bad position: " + card + " appears twice");
+        }
+        return card.getIndex();
+    }
+
+    private static byte[] emptyBoard() {
+        byte[] b = new byte[BOARD_SIZE];
+        Arrays.fill(b, CELLS, BOARD_SIZE, NO_CARD);
+        return b;
+    }
+
+    private static boolean sameColor(int c1, int c2) {
+        return (SUIT[c1] % 2) == (SUIT[c2] % 2);
+    }
+
+    private int foundation(int suit) {
+        return (foundations >>> (4 * (suit-1))) & 0xF;
+    }
+
+    private int pileSize(int pile) {
+        return board[PILE_SIZES + pile];
+    }
+
+    // Index in board[] of the bottom card of the given (0-based) pile
+    private int pileStart(int pile) {
+        int pos = CARDS;
+        for (int i = 0; i < pile; i++) {
+            pos += board[PILE_SIZES + i];
+        }
+        return pos;
+    }
+
+    private int topCard(int pile) {
+        return board[pileStart(pile) + pileSize(pile) - 1];
+    }
+
+    private int tableauEnd() {
+        return pileStart(8);
+    }
+
+    private int popCard(int pile) {
+        return removeCard(pile, pileStart(pile) + pileSize(pile) - 1);
+    }
+
+    // Takes the card at board[pos] out of the given pile, closing up the gap
+    private int removeCard(int pile, int pos) {
+        int last = tableauEnd();
+        int c = board[pos];
+        System.arraycopy(board, pos + 1, board, pos, last - pos - 1);
+        board[last - 1] = NO_CARD;
+        board[PILE_SIZES + pile]--;
+        return c;
+    }
+
+    private void pushCard(int pile, int c) {
+        int end = pileStart(pile) + pileSize(pile);
+        int last = tableauEnd();
+        System.arraycopy(board, end, board, end + 1, last - end);
+        board[end] = (byte) c;
+        board[PILE_SIZES + pile]++;
+    }
+
+    // Moves the top n cards of one pile onto another, keeping their order
+    private void moveRun(int from, int to, int n) {
+        for (int i = n; i > 0; i--) {
+            pushCard(to, removeCard(from, pileStart(from) + pileSize(from) - i));
+        }
+    }
+
+    // How many cards at the top of the pile form a descending, alternating-colour sequence
+    private int runLength(int pile) {
+        int size = pileSize(pile);
+        if (size == 0) return 0;
+        int pos = pileStart(pile) + size - 1;
+        int run = 1;
+        while (run < size) {
+            int above = board[pos];
+            int below = board[pos - 1];
+            if (RANK[below] != RANK[above] + 1 || sameColor(below, above)) break;
+            run++;
+            pos--;
+        }
+        return run;
+    }
+
+    // The longest sequence that can be moved at once using the free cells and empty piles as
+    // temporary space: (free cells + 1) * 2^(empty piles), not counting the destination.
+    private int maxRun(boolean toEmptyPile) {
+        int empty = 0;
+        for (int pile = 0; pile < 8; pile++) {
+            if (pileSize(pile) == 0) empty++;
+        }
+        if (toEmptyPile) empty--;
+        return (numCellsFree + 1) << empty;
+    }
+
+    /**
+     * Makes the move in place, without copying the state. Returns false (and changes nothing)
+     * if the move is not legal here. The parent chain is left alone, so callers walking a line
+     * of play this way keep track of their own moves.
+     */
+    public boolean apply(Action a) {
+        return apply(a.toMove());
+    }
+
+    // Same as apply(Action), for a move packed by Action.encode
+    public boolean apply(int move) {
+        if (!isLegalMove(move)) { return false; }
+        if (Action.numCardsOf(move) > 1) {
+            int srcPile = Action.srcOf(move)-1;
+            int destPile = Action.destOf(move)-1;
+            moveRun(srcPile, destPile, Action.numCardsOf(move));
+            this.depth++;
+            this.hash = 0;
+            this.updateHeuristic(srcPile, destPile);
+            this.setScore();
+            return true;
+        }
+        int c;
+        int srcPile = -1;
+        int destPile = -1;
+        if (Action.fromCellOf(move)) {
+            int s = Action.srcOf(move);
+            c = board[CELLS + s];
+            int used = 4 - numCellsFree;
+            System.arraycopy(board, CELLS + s + 1, board, CELLS + s, used - s - 1);
+            board[CELLS + used - 1] = NO_CARD;
             numCellsFree++;
         }
         else {
-            ArrayList<Card> p1 = tableau.get(a.get_src_pile()-1);
-            c = p1.remove(p1.size()-1);
+            srcPile = Action.srcOf(move)-1;
+            c = popCard(srcPile);
         }
-        int d = a.get_dest_pile();
+        int d = Action.destOf(move);
         if (d == 0) {
-            cells.add(c);
+            board[CELLS + 4 - numCellsFree] = (byte) c;
             numCellsFree--;
         }
         else if (d == 9) {
-            foundations[c.getSuit()] = foundations[c.getSuit()] + 1;
+            foundations += 1 << (4 * (SUIT[c]-1));
         }
         else {
-            ArrayList<Card> p2 = tableau.get(d-1);
-            p2.add(c);
+            destPile = d-1;
+            pushCard(destPile, c);
         }
-        this.returnedActions.add(a);
+        this.depth++;
+        this.hash = 0;
+        this.updateHeuristic(srcPile, destPile);
         this.setScore();
 
         return true;
     }
-        
+
+    /**
+     * Takes back a move made by apply(a). Moves must be undone in the reverse order they were
+     * applied; the state then matches exactly what it was before, down to which free cell
+     * each card sits in.
+     */
+    public void undo(Action a) {
+        undo(a.toMove());
+    }
+
+    public void undo(int move) {
+        if (Action.numCardsOf(move) > 1) {
+            int srcPile = Action.srcOf(move)-1;
+            int destPile = Action.destOf(move)-1;
+            moveRun(destPile, srcPile, Action.numCardsOf(move));
+            this.depth--;
+            this.hash = 0;
+            this.updateHeuristic(destPile, srcPile);
+            this.setScore();
+            return;
+        }
+        int c = Action.cardOf(move);
+        int srcPile = -1;
+        int destPile = -1;
+        int d = Action.destOf(move);
+        if (d == 0) {
+            // apply always fills the first empty cell, so the card is in the last used one
+            board[CELLS + 3 - numCellsFree] = NO_CARD;
+            numCellsFree++;
+        }
+        else if (d == 9) {
+            foundations -= 1 << (4 * (SUIT[c]-1));
+        }
+        else {
+            destPile = d-1;
+            popCard(destPile);
+        }
+        if (Action.fromCellOf(move)) {
+            int s = Action.srcOf(move);
+            int used = 4 - numCellsFree;
+            System.arraycopy(board, CELLS + s, board, CELLS + s + 1, used - s);
+            board[CELLS + s] = (byte) c;
+            numCellsFree--;
+        }
+        else {
+            srcPile = Action.srcOf(move)-1;
+            pushCard(srcPile, c);
+        }
+        this.depth--;
+        this.hash = 0;
+        this.updateHeuristic(destPile, srcPile);
+        this.setScore();
+    }
+
     public boolean isLegalAction(Action a) {
-        int s = a.get_src_pile();
-        Card c;
-        ArrayList<Card> pile;
-        if (a.fromCell()) {
-            c = cells.get(s);
+        return isLegalMove(a.toMove());
+    }
+
+    public boolean isLegalMove(int move) {
+        if (Action.numCardsOf(move) > 1) { return isLegalSequenceMove(move); }
+        int s = Action.srcOf(move);
+        int c;
+        if (Action.fromCellOf(move)) {
+            if (s >= 4 - numCellsFree) { return false; }
+            c = board[CELLS + s];
         }
         else {
-            pile = tableau.get(s-1);
-            c = pile.get(pile.size()-1);
+            if (s < 1 || s > 8 || pileSize(s-1) == 0) { return false; }
+            c = topCard(s-1);
         }
-        if (!c.equals(a.getCard())) { return false; }    
-        int d = a.get_dest_pile();
+        if (c != Action.cardOf(move)) { return false; }
+        int d = Action.destOf(move);
         if (d == 0 && numCellsFree > 0) { return true; }
         if (d == 9) {
-            return c.getRank() == foundations[c.getSuit()] + 1;
+            return RANK[c] == foundation(SUIT[c]) + 1;
             // is this card the next one for its suit's foundation pile?
         }
-        else {
-            pile = tableau.get(d-1);
-            if (pile.size() == 0) { return true; }
-            Card last = pile.get(pile.size()-1);
-            return (last.getRank() == c.getRank() + 1) && (!last.sameColor(c));
+        else if (d >= 1 && d <= 8) {
+            if (pileSize(d-1) == 0) { return true; }
+            int last = topCard(d-1);
+            return (RANK[last] == RANK[c] + 1) && (!sameColor(last, c));
         }
-        //return false;
+        return false;
+    }
+
+    private boolean isLegalSequenceMove(int move) {
+        int n = Action.numCardsOf(move);
+        int s = Action.srcOf(move)-1;
+        int d = Action.destOf(move)-1;
+        if (Action.fromCellOf(move) || s < 0 || s >= 8 || d < 0 || d >= 8 || s == d) { return false; }
+        if (runLength(s) < n) { return false; }
+        int c = board[pileStart(s) + pileSize(s) - n];
+        if (c != Action.cardOf(move)) { return false; }
+        if (pileSize(d) == 0) { return n <= maxRun(true); }
+        int last = topCard(d);
+        return n <= maxRun(false) && (RANK[last] == RANK[c] + 1) && (!sameColor(last, c));
     }
-    
+
     public ArrayList<Action> getLegalActions() {
-        ArrayList<Action> result = new ArrayList<Action>();
-        
+        int[] moves = new int[MAX_MOVES];
+        int n = generateMoves(moves);
+        ArrayList<Action> result = new ArrayList<Action>(n);
+        for (int i = 0; i < n; i++) {
+            result.add(Action.fromMove(moves[i]));
+        }
+        return result;
+    }
+
+    // Enough room for every move generateMoves can produce from any position.
+    public static final int MAX_MOVES = 256;
+
+    /**
+     * Writes every legal move, packed by Action.encode, into moves (which must hold at least
+     * MAX_MOVES entries) and returns how many there are. Allocates nothing, so one buffer per
+     * search can be reused for every expansion.
+     */
+    public int generateMoves(int[] moves) {
+        int count = 0;
+        int usedCells = 4 - numCellsFree;
+
         // Moves from tableau to cells
         if (numCellsFree > 0) {
             for (int i = 0; i < 8; i++) {
-                ArrayList<Card> pile = tableau.get(i);
-                if (pile.size() > 0) {
-                    Card c = pile.get(pile.size()-1);
-                    result.add(new Action(false,i+1,c,0));
+                if (pileSize(i) > 0) {
+                    moves[count++] = Action.encode(false,i+1,topCard(i),0,1);
                 }
             }
         }
-        
+
         // Moves to tableau
         boolean foundEmpty = false;
         for (int d = 0; d < 8; d++) {
-            ArrayList<Card> pile = tableau.get(d);
             // non-empty pile - check all movable cards to see if they can go here.
-            if (pile.size() > 0) {
-                Card top = pile.get(pile.size() - 1);
-                for (int s = 0; s<cells.size(); s++) {
-                    Card c2 = cells.get(s);
-                    if (!top.sameColor(c2) && (top.getRank() == c2.getRank()+1)) {
-                        result.add(new Action(true,s,c2,d+1));
+            if (pileSize(d) > 0) {
+                int top = topCard(d);
+                for (int s = 0; s < usedCells; s++) {
+                    int c2 = board[CELLS + s];
+                    if (!sameColor(top, c2) && (RANK[top] == RANK[c2]+1)) {
+                        moves[count++] = Action.encode(true,s,c2,d+1,1);
                     }
                 }
+                // the card that fits here may be partway down a sequence; move it with the cards on it
                 for (int s = 0; s < 8; s++) {
                     if (s == d) { continue; }
-                    ArrayList<Card> p2 = tableau.get(s);
-                    if (p2.size() == 0) { continue; }
-                    Card c2 = p2.get(p2.size()-1);
-                    if (!top.sameColor(c2) && (top.getRank() == c2.getRank()+1)) {
-                        result.add(new Action(false,s+1,c2,d+1));
-                    }                    
+                    if (pileSize(s) == 0) { continue; }
+                    int n = RANK[top] - RANK[topCard(s)];
+                    if (n < 1 || n > maxRun(false) || n > runLength(s)) { continue; }
+                    int c2 = board[pileStart(s) + pileSize(s) - n];
+                    if (!sameColor(top, c2)) {
+                        moves[count++] = Action.encode(false,s+1,c2,d+1,n);
+                    }
                 }
             }
             else {  // empty pile - any card can go here
                 if (!foundEmpty) {
                     foundEmpty = true;
-                    for (int s = 0; s<cells.size(); s++) {
-                        result.add(new Action(true,s,cells.get(s),d+1));
+                    for (int s = 0; s < usedCells; s++) {
+                        moves[count++] = Action.encode(true,s,board[CELLS + s],d+1,1);
                     }
                     for (int s = 0; s < 8; s++) {
                         if (s == d) { continue; }
-                        ArrayList<Card> p2 = tableau.get(s);
-                        // No point in moving a single card from one tableau pile to an empty space
-                        if (p2.size() >= 2) {
-                            result.add(new Action(false,s+1,p2.get(p2.size()-1),d+1));
+                        // No point in moving a whole pile from one tableau pile to an empty space
+                        int most = Math.min(Math.min(runLength(s), maxRun(true)), pileSize(s) - 1);
+                        for (int n = 1; n <= most; n++) {
+                            int c2 = board[pileStart(s) + pileSize(s) - n];
+                            moves[count++] = Action.encode(false,s+1,c2,d+1,n);
                         }
                     }
                 }
             }
         }
 
-        
+
         // Moves to foundation
-        for (int s = 0; s<cells.size(); s++) {
-            Card c2 = cells.get(s);
-            if (c2.getRank() == foundations[c2.getSuit()] + 1) {
-                result.add(new Action(true,s,c2,9));
+        for (int s = 0; s < usedCells; s++) {
+            int c2 = board[CELLS + s];
+            if (RANK[c2] == foundation(SUIT[c2]) + 1) {
+                moves[count++] = Action.encode(true,s,c2,9,1);
             }
         }
         for (int s = 0; s < 8; s++) {
-            ArrayList<Card> p2 = tableau.get(s);
-            if (p2.size() > 0) {
-                Card c2 = p2.get(p2.size()-1);
-                if (c2.getRank() == foundations[c2.getSuit()] + 1) {
-                    result.add(new Action(false,s+1,c2,9));
+            if (pileSize(s) > 0) {
+                int c2 = topCard(s);
+                if (RANK[c2] == foundation(SUIT[c2]) + 1) {
+                    moves[count++] = Action.encode(false,s+1,c2,9,1);
                 }
             }
         }
-        
-        return result;
+
+        return count;
+    }
+
+    /**
+     * Like generateMoves(moves), but leaves out moves that cannot lead anywhere new given
+     * that previousMove was the move just made to reach this position (Action.NO_MOVE if
+     * unknown, e.g. right after auto-play):
+     *   - moving the same card straight back where it came from;
+     *   - moving a card that just went to a free cell out onto another pile, which the
+     *     previous move could have done directly;
+     *   - two tableau-to-tableau moves on four different piles that leave the number of
+     *     empty piles alone. Either order gives the same position, so only the order with
+     *     the smaller packed move first is kept.
+     */
+    public int generateMoves(int[] moves, int previousMove) {
+        int count = generateMoves(moves);
+        if (previousMove == Action.NO_MOVE) return count;
+        int kept = 0;
+        for (int i = 0; i < count; i++) {
+            if (!redundantAfter(moves[i], previousMove)) {
+                moves[kept++] = moves[i];
+            }
+        }
+        return kept;
+    }
+
+    private boolean redundantAfter(int m, int p) {
+        if (Action.cardOf(m) != Action.cardOf(p)) {
+            return independentTableauMoves(m, p) && m < p;
+        }
+        boolean mFromCell = Action.fromCellOf(m);
+        boolean pFromCell = Action.fromCellOf(p);
+        int mDest = Action.destOf(m);
+        int pDest = Action.destOf(p);
+        if (pDest == 0) {
+            // p put the card in a cell; any move of it to a pile could have been made instead of p
+            return mFromCell && mDest >= 1 && mDest <= 8;
+        }
+        if (pFromCell) {
+            // p took the card out of a cell; putting it back in one undoes p
+            return mDest == 0;
+        }
+        // p moved the card (and maybe cards on it) between piles; straight back undoes it
+        return !mFromCell && pDest >= 1 && pDest <= 8 && Action.srcOf(m) == pDest
+            && mDest == Action.srcOf(p) && Action.numCardsOf(m) == Action.numCardsOf(p);
     }
 
+    // Both moves are pile to pile, touch four different piles, and neither one emptied or
+    // filled a pile; then each was just as legal before the other was made.
+    private boolean independentTableauMoves(int m, int p) {
+        if (Action.fromCellOf(m) || Action.fromCellOf(p)) return false;
+        int ms = Action.srcOf(m), md = Action.destOf(m);
+        int ps = Action.srcOf(p), pd = Action.destOf(p);
+        if (md == 0 || md == 9 || pd == 0 || pd == 9) return false;
+        if (ms == ps || ms == pd || md == ps || md == pd) return false;
+        return pileSize(ps-1) > 0 && pileSize(pd-1) > Action.numCardsOf(p)
+            && pileSize(ms-1) > Action.numCardsOf(m) && pileSize(md-1) > 0;
+    }
+
+    // The move that produced this state, if nothing else happened after it (Action.NO_MOVE
+    // at the start of a game or when auto-play followed); see generateMoves(moves, previousMove).
+    public int getLastMove() {
+        return (autoMoves == null) ? lastMove : Action.NO_MOVE;
+    }
+
+    // Same answer as generateMoves(...) > 0, but stops at the first move it finds.
+    public boolean hasAnyLegalMove() {
+        boolean anyEmpty = false;
+        for (int d = 0; d < 8; d++) {
+            if (pileSize(d) == 0) anyEmpty = true;
+        }
+        for (int s = 0; s < 4 - numCellsFree; s++) {
+            int c = board[CELLS + s];
+            if (anyEmpty || RANK[c] == foundation(SUIT[c]) + 1) return true;
+        }
+        for (int s = 0; s < 8; s++) {
+            if (pileSize(s) == 0) continue;
+            int c = topCard(s);
+            if (numCellsFree > 0 || RANK[c] == foundation(SUIT[c]) + 1) return true;
+            if (anyEmpty && pileSize(s) >= 2) return true;
+        }
+        for (int d = 0; d < 8; d++) {
+            if (pileSize(d) == 0) continue;
+            int top = topCard(d);
+            for (int s = 0; s < 4 - numCellsFree; s++) {
+                int c2 = board[CELLS + s];
+                if (!sameColor(top, c2) && (RANK[top] == RANK[c2]+1)) return true;
+            }
+            for (int s = 0; s < 8; s++) {
+                if (s == d || pileSize(s) == 0) continue;
+                int n = RANK[top] - RANK[topCard(s)];
+                if (n < 1 || n > maxRun(false) || n > runLength(s)) continue;
+                if (!sameColor(top, board[pileStart(s) + pileSize(s) - n])) return true;
+            }
+        }
+        return false;
+    }
+
+    // The state after making move a and then every safe foundation move (see autoPlay)
     public GameState nextState(Action a) {
-        GameState result = new GameState(this);
-        if (!result.executeAction(a)) { return null; }
+        return nextState(a.toMove());
+    }
+
+    public GameState nextState(int move) {
+        GameState result = step(move);
+        if (result != null) { result.autoPlay(); }
         return result;
     }
-    
+
+    // Replays exactly the given moves; lists from getActions() already include the auto-play moves.
+    // Always a new state, even for an empty list, so the caller can change it freely.
     public GameState resultState(ArrayList<Action> Alist) {
-        GameState result = new GameState(this);
+        if (Alist.isEmpty()) { return new GameState(this); }
+        GameState result = this;
         for (Action a : Alist) {
-            if (!result.executeAction(a)) { return null; }
+            result = result.step(a.toMove());
+            if (result == null) { return null; }
         }
         return result;
     }
-    
+
+    private GameState step(int move) {
+        GameState result = new GameState(this);
+        if (!result.apply(move)) { return null; }
+        result.parent = this;
+        result.lastMove = move;
+        result.autoMoves = null;
+        return result;
+    }
+
+    /**
+     * Plays every card that can go to the foundation with no possible downside, over and
+     * over until none is left. Aces and twos are always safe. Any other card is safe once
+     * both foundations of the other colour have reached one below it. After that, no card
+     * that could ever be put on it is still in play, so it will never be needed on the
+     * tableau again. These moves are recorded in the path like any other.
+     */
+    private void autoPlay() {
+        int[] played = null;
+        int numPlayed = 0;
+        boolean moved = true;
+        while (moved) {
+            moved = false;
+            int move = 0;
+            for (int s = 0; s < 4 - numCellsFree && !moved; s++) {
+                int c = board[CELLS + s];
+                if (safeToPlay(c)) {
+                    move = Action.encode(true,s,c,9,1);
+                    moved = true;
+                }
+            }
+            for (int s = 0; s < 8 && !moved; s++) {
+                if (pileSize(s) == 0) continue;
+                int c = topCard(s);
+                if (safeToPlay(c)) {
+                    move = Action.encode(false,s+1,c,9,1);
+                    moved = true;
+                }
+            }
+            if (moved) {
+                apply(move);
+                if (played == null) played = new int[52];
+                played[numPlayed++] = move;
+            }
+        }
+        if (played != null) {
+            autoMoves = Arrays.copyOf(played, numPlayed);
+        }
+    }
+
+    private boolean safeToPlay(int c) {
+        int rank = RANK[c];
+        if (rank != foundation(SUIT[c]) + 1) return false;
+        if (rank <= 2) return true;
+        for (int suit = 1; suit <= 4; suit++) {
+            if (suit % 2 != SUIT[c] % 2 && foundation(suit) < rank - 1) return false;
+        }
+        return true;
+    }
+
+    public int getDepth() {
+        return depth;
+    }
+
+    // Walks the parent chain back to the start; only worth doing once a solution is found.
+    // This is the only place the search turns its packed moves into Action objects.
+    public ArrayList<Action> getActions() {
+        Action[] path = new Action[depth];
+        GameState gs = this;
+        int i = depth - 1;
+        while (i >= 0) {
+            if (gs.autoMoves != null) {
+                for (int j = gs.autoMoves.length - 1; j >= 0; j--) {
+                    path[i--] = Action.fromMove(gs.autoMoves[j]);
+                }
+            }
+            path[i--] = Action.fromMove(gs.lastMove);
+            gs = gs.parent;
+        }
+        return new ArrayList<Action>(Arrays.asList(path));
+    }
+
     public String toDisplayString() {
-        String s1 = "Foundations:";
-        String s2 = "";
+        String nl = System.lineSeparator();
+        StringBuilder sb = new StringBuilder(256);
+        sb.append("Foundations:");
         for (int i = 1; i <= 4; i++) {
-            s2 = s2 + " " + Card.rankString.charAt(foundations[i]) + Card.suitString.charAt(i);
+            sb.append(' ').append(Card.rankString.charAt(foundation(i))).append(Card.suitString.charAt(i));
         }
-        String s3 = "Free cells:";
-        for (Card c : cells) {
-            s3 = s3 + " " + c.toString();
+        sb.append(nl).append("Free cells:");
+        for (int i = 0; i < 4 - numCellsFree; i++) {
+            sb.append(' ').append(Card.fromIndex(board[CELLS + i]));
         }
         for (int i = 0; i < numCellsFree; i++) {
-            s3 = s3 + " --";
+            sb.append(" --");
         }
-        String s4 = "Tableau (piles go left to right, right is top):";
+        sb.append(nl).append("Tableau (piles go left to right, right is top):");
         for (int j = 0; j < 8; j++) {
-            ArrayList<Card> pile = tableau.get(j);
-            s4 = s4 + System.lineSeparator() + " " + (j+1) + ":";
-            if (pile.size() == 0) {
-                s4 = s4 + " --";
+            sb.append(nl).append(' ').append(j+1).append(':');
+            if (pileSize(j) == 0) {
+                sb.append(" --");
             }
             else {
-                for (Card c : pile) {
-                    s4 = s4 + " " + c.toString();
+                int start = pileStart(j);
+                for (int k = start; k < start + pileSize(j); k++) {
+                    sb.append(' ').append(Card.fromIndex(board[k]));
                 }
             }
         }
-        return s1 + s2 + System.lineSeparator() + s3 + System.lineSeparator() + s4;
+        return sb.toString();
     }
-    
+
     // The string format for a GameState is as follows:
     //   First line: four integers representing the foundations
     //   Second line: one integer for number of free cells, followed by list of cards in cells (if any)
     //   Lines 3-10: List of cards in each tableau pile. Empty piles are represented by "--"
     public String toString() {
-        String result = "";
+        StringBuilder sb = new StringBuilder(192);
         for (int i = 1; i <= 4; i++) {
-            result = result + foundations[i] + " ";
+            sb.append(foundation(i)).append(' ');
         }
-        result = result + "\n";
-        
-        result = result + numCellsFree + " ";
-        for (int i = 0; i < cells.size(); i++) {
-            result = result + cells.get(i).toString() + " ";
+        sb.append('\n');
+
+        sb.append(numCellsFree).append(' ');
+        for (int i = 0; i < 4 - numCellsFree; i++) {
+            sb.append(Card.fromIndex(board[CELLS + i])).append(' ');
         }
-        result = result + "\n";
-                
+        sb.append('\n');
+
         for (int i = 0; i < 8; i++) {
-            ArrayList<Card> pile = tableau.get(i);
-            if (pile.size() == 0) {
-                result = result + "--";
+            if (pileSize(i) == 0) {
+                sb.append("--");
             }
             else {
-                for (Card c : pile) {
-                    result = result + c.toString() + " ";
+                int start = pileStart(i);
+                for (int k = start; k < start + pileSize(i); k++) {
+                    sb.append(Card.fromIndex(board[k])).append(' ');
                 }
             }
-            result = result + "\n";
+            sb.append('\n');
         }
-        return result;
+        return sb.toString();
     }
-    
+
     public void dumpToFile(String filename) {
         try {
             FileWriter fw = new FileWriter(filename);
@@ -332,30 +869,192 @@ public class GameState implements Comparable<GameState>
             System.out.println("file dump failed, IOException");
         }
     }
-    
+
+    // Bytes one position takes in the binary format; see writeBinary
+    public static final int BINARY_SIZE = 52;
+
+    // Binary codes for where a card is. Below CODE_CELL the code is pile * MAX_BINARY_PILE +
+    // position in the pile, counting up from the bottom card.
+    private static final int MAX_BINARY_PILE = 20;
+    private static final int CODE_CELL = 8 * MAX_BINARY_PILE;  // plus the cell's index
+    private static final int CODE_FOUNDATION = 0xFF;
+
+    /**
+     * Writes the position, but not the moves that led to it, as BINARY_SIZE bytes: one per
+     * card, in card index order, saying where that card is. Every position fits, since a
+     * pile can hold at most 19 cards (six under a king, then the king down to the ace).
+     */
+    public void writeBinary(ByteBuffer buf) {
+        buf.put(binaryCodes(IDENTITY_ORDER, false));
+    }
+
+    /**
+     * Writes the position as writeBinary would after rearranging it into a standard layout:
+     * piles sorted by bottom card with the empty ones last, and cells sorted by card. Every
+     * state that equals this one writes exactly the same bytes.
+     */
+    public void writeCanonicalBinary(ByteBuffer buf) {
+        buf.put(binaryCodes(canonicalPileOrder(), true));
+    }
+
+    /**
+     * Which pile of this state ends up in each slot of the standard layout that
+     * writeCanonicalBinary uses: entry i is the pile (0-7) written as pile i. Two equal
+     * states hold the same cards in the piles at matching entries.
+     */
+    public int[] canonicalPileOrder() {
+        int[] order = new int[8];
+        long[] keys = new long[8];
+        for (int pile = 0; pile < 8; pile++) {
+            // empty piles sort after all the others, in the order they are in now
+            int bottom = (pileSize(pile) == 0) ? 64 + pile : board[pileStart(pile)];
+            keys[pile] = ((long) bottom << 8) | pile;
+        }
+        Arrays.sort(keys);
+        for (int i = 0; i < 8; i++) {
+            order[i] = (int) (keys[i] & 0xFF);
+        }
+        return order;
+    }
+
+    private static final int[] IDENTITY_ORDER = { 0, 1, 2, 3, 4, 5, 6, 7 };
+
+    private byte[] binaryCodes(int[] pileOrder, boolean sortCells) {
+        byte[] codes = new byte[BINARY_SIZE];
+        Arrays.fill(codes, (byte) CODE_FOUNDATION);
+        int[] cells = new int[4 - numCellsFree];
+        for (int i = 0; i < cells.length; i++) {
+            cells[i] = board[CELLS + i];
+        }
+        if (sortCells) Arrays.sort(cells);
+        for (int i = 0; i < cells.length; i++) {
+            codes[cells[i]] = (byte) (CODE_CELL + i);
+        }
+        for (int slot = 0; slot < 8; slot++) {
+            int pile = pileOrder[slot];
+            int start = pileStart(pile);
+            if (pileSize(pile) > MAX_BINARY_PILE) {
+                throw new IllegalStateException("pile " + (pile+1) + " is too tall to encode");
+            }
+            for (int k = 0; k < pileSize(pile); k++) {
+                codes[board[start + k]] = (byte) (slot * MAX_BINARY_PILE + k);
+            }
+        }
+        return codes;
+    }
+
+    // Reads a position written by writeBinary. Throws IllegalArgumentException if the bytes
+    // don't describe one.
+    public static GameState readBinary(ByteBuffer buf) {
+        byte[] codes = new byte[BINARY_SIZE];
+        buf.get(codes);
+
+        int[] slots = new int[CODE_CELL + 4];
+        Arrays.fill(slots, NO_CARD);
+        int[] onFoundation = new int[5]; // bit r-1 set for each rank r of that suit played
+        for (int c = 0; c < 52; c++) {
+            int code = codes[c] & 0xFF;
+            if (code == CODE_FOUNDATION) {
+                onFoundation[SUIT[c]] |= 1 << (RANK[c]-1);
+            }
+            else if (code < slots.length && slots[code] == NO_CARD) {
+                slots[code] = c;
+            }
+            else {
+                throw new IllegalArgumentException("bad position record: card code " + code);
+            }
+        }
+
+        byte[] board = emptyBoard();
+        int foundations = 0;
+        for (int suit = 1; suit <= 4; suit++) {
+            int played = Integer.bitCount(onFoundation[suit]);
+            if (onFoundation[suit] != (1 << played) - 1) {
+                throw new IllegalArgumentException("bad position record: gap in a foundation");
+            }
+            foundations |= played << (4 * (suit-1));
+        }
+        int numCellsFree = 4;
+        for (int i = 0; i < 4; i++) {
+            if (slots[CODE_CELL + i] != NO_CARD) {
+                board[CELLS + 4 - numCellsFree] = (byte) slots[CODE_CELL + i];
+                numCellsFree--;
+            }
+        }
+        int pos = CARDS;
+        for (int pile = 0; pile < 8; pile++) {
+            int size = 0;
+            for (int k = 0; k < MAX_BINARY_PILE; k++) {
+                int c = slots[pile * MAX_BINARY_PILE + k];
+                if (c == NO_CARD) continue;
+                if (k != size) {
+                    throw new IllegalArgumentException("bad position record: gap in pile " + (pile+1));
+                }
+                board[pos++] = (byte) c;
+                size++;
+            }
+            board[PILE_SIZES + pile] = (byte) size;
+        }
+        return new GameState(board, numCellsFree, foundations);
+    }
+
+    private GameState(byte[] board, int numCellsFree, int foundations)
+    {
+        this.board = board;
+        this.numCellsFree = numCellsFree;
+        this.foundations = foundations;
+        this.recomputeHeuristic();
+        this.setScore();
+    }
+
+    /**
+     * The packed move (see Action.encode) that moves numCards cards from the given cell or
+     * pile to dest, with the card filled in from this position. Used to rebuild moves that
+     * were stored without their card. Returns Action.NO_MOVE if the source doesn't hold that
+     * many cards; whether the move is legal is for isLegalMove to say.
+     */
+    public int moveFrom(boolean fromCell, int src, int dest, int numCards) {
+        int c;
+        if (fromCell) {
+            if (src < 0 || src >= 4 - numCellsFree || numCards != 1) return Action.NO_MOVE;
+            c = board[CELLS + src];
+        }
+        else {
+            if (src < 1 || src > 8 || numCards < 1 || numCards > pileSize(src-1)) return Action.NO_MOVE;
+            c = board[pileStart(src-1) + pileSize(src-1) - numCards];
+        }
+        return Action.encode(fromCell, src, c, dest, numCards);
+    }
+
+    // Which free cell holds card c (its index), or -1 if it isn't in one
+    public int cellOf(int c) {
+        for (int i = 0; i < 4 - numCellsFree; i++) {
+            if (board[CELLS + i] == c) return i;
+        }
+        return -1;
+    }
+
     public void display() {
         System.out.println(toDisplayString());
     }
-    
+
     public boolean isWin() {
-        for (int i = 1; i <=4; i++) {
-            if (foundations[i] < 13) { return false; }
-        }
-        return true;
+        // every suit at 13 (0xD) means all four nibbles read D
+        return foundations == 0xDDDD;
     }
-    
+
     public boolean gameover() {
-        return (getLegalActions().size()) == 0;
+        return !hasAnyLegalMove();
     }
-    
+
     public boolean isLoss() {
         return !isWin() && gameover();
     }
 
     public void setScore() {
-        this.score = this.returnedActions.size() + h();
+        this.score = this.depth + h();
     }
-    
+
     public int getScore() {
         return this.score;
     }
@@ -365,145 +1064,365 @@ public class GameState implements Comparable<GameState>
         return this.score - other.getScore();
     }
 
+    // Kept up to date by apply and undo; see updateHeuristic.
     public int h() {
-        
-        int heuristicScore = 52;
-        for (int i = 1; i < foundations.length; i++) {
-            heuristicScore -= foundations[i];
-        }
-
-        ArrayList<Card> blockers = new ArrayList<Card>();
-        singlePileBlockers(blockers);
-        doublePileBlockers(blockers);
-        //triplePileBlockers(blockers);
+        return heuristic;
+    }
 
-        return heuristicScore + blockers.size();
+    // A bound that never overestimates, unlike h(), where one sequence move can clear
+    // several blockers: every card left still has to make its own move to the foundation.
+    public int minMovesLeft() {
+        return cardsLeft();
     }
 
-    public void singlePileBlockers(ArrayList<Card> blockers) {
-        for (ArrayList<Card> cascade: tableau) {
-            for (int topPos = 0; topPos < cascade.size(); topPos++) {
-                Card topCard = cascade.get(topPos);
+    private static volatile EndgameTable endgameTable;
+    private static volatile int heuristicLevel = 2;
 
-                for (int bottomPos = topPos + 1; bottomPos < cascade.size(); bottomPos++) {
-                    Card bottomCard = cascade.get(bottomPos);
+    /**
+     * How long a cycle of blockers between piles h() looks for: 1 counts only blockers
+     * within a pile, and 2 (the default), 3 or 4 also count cards caught in a cycle through
+     * that many piles (see cycleBlockers). Higher levels prune more and cost more per
+     * state. Like setEndgameTable, set this before a search starts.
+     */
+    public static void setHeuristicLevel(int level) {
+        if (level < 1 || level > 4) {
+            throw new IllegalArgumentException("heuristic level must be 1 to 4: " + level);
+        }
+        heuristicLevel = level;
+    }
 
-                    if (topCard.getSuit() == bottomCard.getSuit() && topCard.getRank() < bottomCard.getRank()) {
-                        if (!blockers.contains(bottomCard)) blockers.add(bottomCard);
+    /**
+     * Makes h() exact for every position the table covers; null goes back to the estimate
+     * alone. A state works out its h() as it is made, so set this before a search starts.
+     */
+    public static void setEndgameTable(EndgameTable table) {
+        endgameTable = table;
+    }
 
-                    }
+    // The cards left plus the blockers, unless the endgame table knows the exact distance
+    private int estimate() {
+        int left = cardsLeft();
+        EndgameTable table = endgameTable;
+        if (table != null && left <= table.getMaxCards()) {
+            EndgameScratch scratch = ENDGAME_SCRATCH.get();
+            int[][] piles = scratch.piles;
+            int[] sizes = scratch.sizes;
+            int pos = CARDS;
+            for (int pile = 0; pile < 8; pile++) {
+                sizes[pile] = pileSize(pile);
+                for (int k = 0; k < sizes[pile]; k++) {
+                    piles[pile][k] = board[pos++];
                 }
             }
+            int[] cells = scratch.cells;
+            for (int i = 0; i < 4 - numCellsFree; i++) {
+                cells[i] = board[CELLS + i];
+            }
+            int exact = table.distance(foundations, cells, 4 - numCellsFree, piles, sizes);
+            if (exact >= 0) return exact;
         }
+        return left + totalBlockers();
+    }
+
+    // Working space for handing a position to the endgame table, kept per thread like
+    // BlockerScratch. No pile holds more cards than are left, so MAX_CARDS each will do.
+    private static final class EndgameScratch
+    {
+        final int[][] piles = new int[8][EndgameTable.MAX_CARDS];
+        final int[] sizes = new int[8];
+        final int[] cells = new int[4];
     }
 
-    public void doublePileBlockers(ArrayList<Card> blockers) {
+    private static final ThreadLocal<EndgameScratch> ENDGAME_SCRATCH = ThreadLocal.withInitial(EndgameScratch::new);
 
-        for (int pileOneIndex = 0; pileOneIndex < tableau.size(); pileOneIndex++) {
-            ArrayList<Card> pileOne = tableau.get(pileOneIndex);
-            if (pileOne.size() < 2) continue;
+    // Full evaluation from scratch. Only needed when a state is built from nothing.
+    private void recomputeHeuristic() {
+        pileBlockers = 0;
+        countAllPileBlockers();
+        heuristic = estimate();
+    }
 
-            for (int pileTwoIndex = 0; pileTwoIndex < tableau.size(); pileTwoIndex++) {
-                ArrayList<Card> pileTwo = tableau.get(pileTwoIndex);
-                if (pileTwoIndex == pileOneIndex || pileTwo.size() < 2) continue;
+    // Blockers within a pile only change when the pile does, so at level 1 only the source
+    // and destination piles are recounted. A cycle through other piles can pass through a
+    // moved pile without touching the pile it blocks, so above that every pile is recounted;
+    // cycleBlockers makes that cheaper than recounting just the piles that might change
+    // one at a time with doublePileBlockers.
+    private void updateHeuristic(int srcPile, int destPile) {
+        if (heuristicLevel > 1) {
+            if (srcPile >= 0 || destPile >= 0) countAllPileBlockers();
+        }
+        else {
+            if (srcPile >= 0) setPileBlockers(srcPile, Long.bitCount(singlePileBlockers(srcPile, 0L)));
+            if (destPile >= 0) setPileBlockers(destPile, Long.bitCount(singlePileBlockers(destPile, 0L)));
+        }
+        heuristic = estimate();
+    }
 
-                for (int c1Index = 1; c1Index < pileOne.size(); c1Index++) { 
-                    Card c1 = pileOne.get(c1Index);
-                    if (blockers.contains(c1)) continue;
+    private int cardsLeft() {
+        int left = 52;
+        for (int suit = 1; suit <= 4; suit++) {
+            left -= foundation(suit);
+        }
+        return left;
+    }
 
-                    for (int c2Index = pileTwo.size() - 2; c2Index >= 0; c2Index--) {
-                        Card c2 = pileTwo.get(c2Index);
-                        if (blockers.contains(c1)) break;
-                        if (c2.getSuit() != c1.getSuit() || c2.getRank() > c1.getRank()) continue;
+    private int totalBlockers() {
+        int total = 0;
+        for (int pile = 0; pile < 8; pile++) {
+            total += (int) (pileBlockers >>> (8 * pile)) & 0xFF;
+        }
+        return total;
+    }
 
-                        for (int c3Index = c2Index + 1; c3Index < pileTwo.size(); c3Index++) {
-                            if (blockers.contains(c1)) break;
-                            Card c3 = pileTwo.get(c3Index);
+    private void setPileBlockers(int pile, int count) {
+        pileBlockers = (pileBlockers & ~(0xFFL << (8 * pile))) | ((long) count << (8 * pile));
+    }
 
-                            for (int c4Index = c1Index - 1; c4Index >= 0; c4Index--) {
-                                Card c4 = pileOne.get(c4Index);
+    // Blockers are cards that sit in a pile, so each one belongs to exactly one pile and the
+    // heuristic is the sum of these per-pile counts.
+    private void countAllPileBlockers() {
+        BlockerScratch scratch = SCRATCH.get();
+        cycleBlockers(heuristicLevel, scratch.blockers, scratch);
+        for (int pile = 0; pile < 8; pile++) {
+            setPileBlockers(pile, Long.bitCount(scratch.blockers[pile]));
+        }
+    }
 
-                                if (c4.getSuit() != c3.getSuit() || c4.getRank() > c3.getRank()) continue;
-                                if (!blockers.contains(c1)) blockers.add(c1);
-                            }
-                        }
-                    }
+    // Working space for cycleBlockers. apply and undo run it on every move, so each thread
+    // keeps one set of these rather than allocating them each time.
+    private static final class BlockerScratch
+    {
+        final long[] pileCards = new long[8];
+        final long[][] needAbove = new long[8][52];
+        final byte[] posOf = new byte[52];
+        final long[] blockers = new long[8];
+    }
+
+    private static final ThreadLocal<BlockerScratch> SCRATCH = ThreadLocal.withInitial(BlockerScratch::new);
+
+    // Blocker sets are 64-bit masks with bit i set for the card with index i. Each method
+    // returns the given set plus whatever blockers it finds.
+    public long singlePileBlockers(int pile, long blockers) {
+        int start = pileStart(pile);
+        int end = start + pileSize(pile);
+        for (int topPos = start; topPos < end; topPos++) {
+            int topCard = board[topPos];
+
+            for (int bottomPos = topPos + 1; bottomPos < end; bottomPos++) {
+                int bottomCard = board[bottomPos];
+
+                if (SUIT[topCard] == SUIT[bottomCard] && RANK[topCard] < RANK[bottomCard]) {
+                    blockers |= 1L << bottomCard;
                 }
             }
         }
+        return blockers;
     }
 
-    /* 
-    public void triplePileBlockers(ArrayList<Card> blockers) {
-        for (int pileOneIndex = 0; pileOneIndex < tableau.size(); pileOneIndex++) {
-            ArrayList<Card> pileOne = tableau.get(pileOneIndex);
-            if (pileOne.size() < 2) continue;
+    // Cards in pileOne that are blocked through a cycle with pileTwo
+    public long doublePileBlockers(int pileOneIndex, int pileTwoIndex, long blockers) {
+        int oneStart = pileStart(pileOneIndex);
+        int oneSize = pileSize(pileOneIndex);
+        int twoStart = pileStart(pileTwoIndex);
+        int twoSize = pileSize(pileTwoIndex);
+        if (oneSize < 2 || twoSize < 2) return blockers;
 
-            for (int pileTwoIndex = 0; pileTwoIndex < tableau.size(); pileTwoIndex++) {
-                ArrayList<Card> pileTwo = tableau.get(pileTwoIndex);
-                if (pileTwoIndex == pileOneIndex || pileTwo.size() < 2) continue;
+        for (int c1Index = 1; c1Index < oneSize; c1Index++) {
+            int c1 = board[oneStart + c1Index];
+            long c1Bit = 1L << c1;
+            if ((blockers & c1Bit) != 0) continue;
 
-                for (int pileThreeIndex = 0; pileThreeIndex < tableau.size(); pileThreeIndex++) {
-                    ArrayList<Card> pileThree = tableau.get(pileThreeIndex);
-                    if (pileThreeIndex == pileOneIndex || pileThreeIndex == pileTwoIndex || pileThree.size() < 2) continue;
+            for (int c2Index = twoSize - 2; c2Index >= 0; c2Index--) {
+                int c2 = board[twoStart + c2Index];
+                if ((blockers & c1Bit) != 0) break;
+                if (SUIT[c2] != SUIT[c1] || RANK[c2] > RANK[c1]) continue;
 
-                    for (int c1Index = 1; c1Index < pileOne.size(); c1Index++) {
-                        Card c1 = pileOne.get(c1Index);
-                        if (blockers.contains(c1)) continue;
+                for (int c3Index = c2Index + 1; c3Index < twoSize; c3Index++) {
+                    if ((blockers & c1Bit) != 0) break;
+                    int c3 = board[twoStart + c3Index];
 
-                        for (int c2Index = pileTwo.size() - 2; c2Index >= 0; c2Index--) {
-                            if (blockers.contains(c1)) break;
-                            Card c2 = pileTwo.get(c2Index);
-                            if (c2.getSuit() != c1.getSuit() || c2.getRank() > c1.getRank()) continue;
+                    for (int c4Index = c1Index - 1; c4Index >= 0; c4Index--) {
+                        int c4 = board[oneStart + c4Index];
 
-                            for (int c3Index = c2Index + 1; c3Index < pileTwo.size(); c3Index++) {
-                                if (blockers.contains(c1)) break;
-                                Card c3 = pileTwo.get(c3Index);
+                        if (SUIT[c4] != SUIT[c3] || RANK[c4] > RANK[c3]) continue;
+                        blockers |= c1Bit;
+                    }
+                }
+            }
+        }
+        return blockers;
+    }
 
-                                for (int c4Index = pileThree.size() - 2; c4Index >= 0; c4Index--) {
-                                    if (blockers.contains(c1)) break;
-                                    Card c4 = pileThree.get(c4Index);
-                                    if (c4.getSuit() != c3.getSuit() || c4.getRank() > c3.getRank()) continue;
+    /**
+     * Every pile's blockers at once, counting cycles through up to maxPiles piles (1 to 4);
+     * entry p is pile p's set. With maxPiles = 2 this is the same as singlePileBlockers plus
+     * doublePileBlockers against every other pile.
+     *
+     * A card c1 that isn't at the bottom of its pile is caught in a cycle if it can't reach
+     * the foundation before something below it has left, because of a chain like this one:
+     *   - c1 needs a lower card of its suit, buried in a second pile;
+     *   - some card above that one needs a lower card of its suit, buried in a third pile;
+     *   - and so on, until some card above the last one needs a card below c1.
+     * Such a chain only has to look at the lowest needed card in each pile, since every
+     * card above any needed card is above that one too. So each pile gets a table, by
+     * position, of what the cards above that position need. Following the chain through a
+     * pile is then one lookup.
+     */
+    public long[] cycleBlockers(int maxPiles) {
+        long[] blockers = new long[8];
+        cycleBlockers(maxPiles, blockers);
+        return blockers;
+    }
 
-                                    for (int c5Index = c4Index + 1; c5Index < pileThree.size(); c5Index++) {
-                                        if (blockers.contains(c1)) break;
-                                        Card c5 = pileThree.get(c5Index);
+    // Same as above, but fills in blockers (8 long) instead, and so allocates nothing.
+    public void cycleBlockers(int maxPiles, long[] blockers) {
+        cycleBlockers(maxPiles, blockers, SCRATCH.get());
+    }
 
-                                        for (int c6Index = c1Index - 1; c6Index >= 0; c6Index--) {
-                                            if (blockers.contains(c1)) break;
-                                            Card c6 = pileOne.get(c6Index);
+    private void cycleBlockers(int maxPiles, long[] blockers, BlockerScratch scratch) {
+        long[] pileCards = scratch.pileCards;
+        long[][] needAbove = scratch.needAbove;
+        // Only read for cards that are in some pile, so what earlier calls left there is harmless.
+        byte[] posOf = scratch.posOf;
+        for (int pile = 0; pile < 8; pile++) {
+            int start = pileStart(pile);
+            int size = pileSize(pile);
+            pileCards[pile] = 0;
+            long need = 0;
+            for (int k = size - 1; k >= 0; k--) {
+                int c = board[start + k];
+                needAbove[pile][k] = need;
+                need |= LOWER[c];
+                pileCards[pile] |= 1L << c;
+                posOf[c] = (byte) k;
+            }
+        }
 
-                                            if (c6.getSuit() != c5.getSuit() || c6.getRank() > c5.getRank()) continue;
-                                            if (!blockers.contains(c1)) blockers.add(c1);
-                                        }
-                                    }
-                                }
-                            }
-                        }
-                    }
+        for (int pile = 0; pile < 8; pile++) {
+            blockers[pile] = 0;
+            if (pileSize(pile) < 2) continue;
+            long found = singlePileBlockers(pile, 0L);
+            int start = pileStart(pile);
+            long below = 1L << board[start];
+            for (int k = 1; k < pileSize(pile); k++) {
+                int c = board[start + k];
+                if ((found & (1L << c)) == 0 && maxPiles > 1
+                    && closesCycle(LOWER[c], below, 1 << pile, maxPiles - 1, pileCards, needAbove, posOf)) {
+                    found |= 1L << c;
                 }
+                below |= 1L << c;
             }
+            blockers[pile] = found;
         }
     }
-    */
-    
+
+    // Whether a chain through at most pilesLeft more piles, none of them in visited, starts
+    // from a card needing one of need and ends at a card needing one of target.
+    private static boolean closesCycle(long need, long target, int visited, int pilesLeft,
+                                       long[] pileCards, long[][] needAbove, byte[] posOf) {
+        for (int pile = 0; pile < 8; pile++) {
+            if ((visited & (1 << pile)) != 0) continue;
+            long hit = pileCards[pile] & need;
+            if (hit == 0) continue;
+            int lowest = Integer.MAX_VALUE;
+            for (; hit != 0; hit &= hit - 1) {
+                lowest = Math.min(lowest, posOf[Long.numberOfTrailingZeros(hit)]);
+            }
+            long next = needAbove[pile][lowest];
+            if ((next & target) != 0) return true;
+            if (pilesLeft > 1 && next != 0
+                && closesCycle(next, target, visited | (1 << pile), pilesLeft - 1, pileCards, needAbove, posOf)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    // Two states are equal when they describe the same position, regardless of how many
+    // moves it took to reach them; the search compares path lengths separately. Shuffling
+    // the eight piles or the four free cells around doesn't change the position either,
+    // so piles are matched up by their bottom card and cells are compared as a set. Each
+    // state still keeps its real layout, so the moves it records stay valid.
     @Override
     public boolean equals(Object o) {
+        if (this == o) return true;
+        if (!(o instanceof GameState)) return false;
         GameState other = (GameState) o;
 
-        if (other.score != this.score) return false;
-        if (tableau.size() != other.tableau.size()) return false;
+        if (foundations != other.foundations || numCellsFree != other.numCellsFree) return false;
+        if (cellSet() != other.cellSet()) return false;
+        if (hashCode() != other.hashCode()) return false;
+
+        for (int pile = 0; pile < 8; pile++) {
+            int size = pileSize(pile);
+            if (size == 0) continue;
+            int start = pileStart(pile);
+            int match = other.findPile(board[start]);
+            if (match < 0 || other.pileSize(match) != size) return false;
+            int otherStart = other.pileStart(match);
+            for (int k = 0; k < size; k++) {
+                if (board[start + k] != other.board[otherStart + k]) return false;
+            }
+        }
+        // Same foundations and cells means the same number of cards on the tableau, so
+        // matching every pile here leaves no unmatched pile over there.
+        return true;
+    }
+
+    // Bit i set for each card with index i sitting in a free cell
+    private long cellSet() {
+        long set = 0;
+        for (int i = 0; i < 4 - numCellsFree; i++) {
+            set |= 1L << board[CELLS + i];
+        }
+        return set;
+    }
 
-        for (int pileIndex = 0; pileIndex < tableau.size(); pileIndex++) {
-            ArrayList<Card> pile = tableau.get(pileIndex);
-            ArrayList<Card> otherPile = other.tableau.get(pileIndex);
-            if (pile.size() != otherPile.size()) return false;
+    // The pile whose bottom card is c, or -1 if no pile starts with c
+    private int findPile(int c) {
+        int pos = CARDS;
+        for (int pile = 0; pile < 8; pile++) {
+            if (pileSize(pile) > 0 && board[pos] == c) return pile;
+            pos += pileSize(pile);
+        }
+        return -1;
+    }
 
-            for (int cardIndex = 0; cardIndex < pile.size(); cardIndex++) {
-                if (!pile.get(cardIndex).equals(otherPile.get(cardIndex))) return false;
+    // Must agree with equals, so each pile and each cell contributes independently of where
+    // it sits, and the contributions are summed. Cached, since the search asks repeatedly;
+    // apply and undo reset it.
+    @Override
+    public int hashCode() {
+        if (hash == 0) {
+            int h = foundations * 0x9E3779B1;
+            for (int i = 0; i < 4 - numCellsFree; i++) {
+                h += mix(board[CELLS + i] + 1);
             }
+            int pos = CARDS;
+            for (int pile = 0; pile < 8; pile++) {
+                if (pileSize(pile) == 0) continue;
+                // seeded so that a pile of one card doesn't hash like the same card in a cell
+                int pileHash = PILE_SEED;
+                for (int k = 0; k < pileSize(pile); k++) {
+                    pileHash = 31 * pileHash + board[pos++];
+                }
+                h += mix(pileHash);
+            }
+            h = mix(h);
+            hash = (h == 0) ? 1 : h;
         }
+        return hash;
+    }
 
-        return true;
+    private static final int PILE_SEED = 0x2545F491;
+
+    // Spreads the bits of x over the whole int (MurmurHash3's finalizer), so that sums of
+    // mixed values rarely collide
+    private static int mix(int x) {
+        x ^= x >>> 16;
+        x *= 0x85EBCA6B;
+        x ^= x >>> 13;
+        x *= 0xC2B2AE35;
+        return x ^ (x >>> 16);
     }
 }
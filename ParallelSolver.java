@@ -0,0 +1,338 @@
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Hash-distributed A* over several threads.
+ *
+ * Every position has exactly one owning worker, picked from its hash. A worker keeps its own
+ * open queue and seen table, and only ever touches those; successors owned by someone else
+ * are handed over through the owner's lock-free inbox. A worker with nothing to do sleeps
+ * until a hand-off wakes it. Once a goal has been found, workers keep going until nothing
+ * left anywhere scores below it. h() can overestimate, so that doesn't make the solution
+ * the shortest, and it may differ from what FreeCell.solve finds, or from one run to the
+ * next, depending on which worker gets where first.
+ *
+ * The node and time limits, cancellation and the counters in SearchStats work as they do
+ * for the single-threaded engines, with the counters summed over all workers. Each worker
+ * claims expansions from the node budget CHECK_INTERVAL at a time, so the search never
+ * expands more than the limit, but may stop a little short of it.
+ *
+ * A ParallelSolver runs one search; make a new one for the next.
+ *
+ * @author Van Griffith
+ * @version 18 October 2026
+ */
+public class ParallelSolver
+{
+    // How long an idle worker sleeps before looking around again, in case it was not woken.
+    private static final long IDLE_NANOS = 10000000;
+
+    private final Worker[] workers;
+
+    // States handed to another worker's inbox that the owner has not yet taken in, and the
+    // running total of all hand-offs. Together with the workers' idle flags these tell us
+    // when the whole search has gone quiet.
+    private final AtomicLong inFlight = new AtomicLong();
+    private final AtomicLong totalSent = new AtomicLong();
+
+    private final AtomicInteger bestCost = new AtomicInteger(Integer.MAX_VALUE);
+    private volatile GameState bestGoal;
+    private volatile boolean done;
+    private volatile Throwable failure;
+
+    // Set up by search before the workers start.
+    private GameState start;
+    private SearchStats stats;
+    private long deadline;
+    // Expansions not yet claimed by any worker
+    private final AtomicLong budget = new AtomicLong();
+    // Why the search was stopped before it ran out of work, if it was
+    private final AtomicReference<SearchStats.Outcome> stopReason = new AtomicReference<SearchStats.Outcome>();
+
+    public ParallelSolver(int numThreads) {
+        if (numThreads < 1) {
+            throw new IllegalArgumentException("need at least one thread");
+        }
+        workers = new Worker[numThreads];
+        for (int i = 0; i < numThreads; i++) {
+            workers[i] = new Worker();
+        }
+    }
+
+    /**
+     * Searches from start until a solution turns up and nothing left could beat it, or
+     * until nodeLimit states have been expanded, timeLimitMillis of wall-clock time have
+     * gone by, or the search is cancelled through stats or by interrupting the calling
+     * thread. Prints nothing; how the search ended and how much work it took are recorded
+     * in stats. Returns the solution, or an empty list if none was found.
+     */
+    public ArrayList<Action> search(GameState start, long nodeLimit, long timeLimitMillis, SearchStats stats) {
+        if (this.start != null) {
+            throw new IllegalStateException("a ParallelSolver only runs one search");
+        }
+        this.start = start;
+        this.stats = stats;
+        this.deadline = (timeLimitMillis == Long.MAX_VALUE) ? Long.MAX_VALUE
+                                                            : System.nanoTime() + timeLimitMillis * 1000000;
+        budget.set(nodeLimit);
+        stats.begin(SearchMode.ASTAR);
+        stats.sawH(start.h());
+        try {
+            send(start);
+            Thread[] threads = new Thread[workers.length];
+            for (int i = 0; i < workers.length; i++) {
+                threads[i] = new Thread(workers[i], "freecell-worker-" + i);
+                workers[i].thread = threads[i];
+            }
+            for (Thread t : threads) {
+                t.start();
+            }
+            // Wait for the workers to wind down even if we're interrupted, so that nothing
+            // is still running once this returns.
+            boolean interrupted = false;
+            for (Thread t : threads) {
+                while (true) {
+                    try {
+                        t.join();
+                        break;
+                    } catch (InterruptedException e) {
+                        interrupted = true;
+                        stop(SearchStats.Outcome.CANCELLED);
+                    }
+                }
+            }
+            if (interrupted) Thread.currentThread().interrupt();
+
+            if (failure != null && !(failure instanceof OutOfMemoryError)) {
+                throw new RuntimeException("parallel search failed", failure);
+            }
+            if (bestGoal != null) {
+                ArrayList<Action> actions = bestGoal.getActions();
+                stats.outcome = SearchStats.Outcome.SOLVED;
+                stats.solutionLength = actions.size();
+                return actions;
+            }
+            if (failure != null) {
+                stats.outcome = SearchStats.Outcome.OUT_OF_MEMORY;
+            }
+            else if (stopReason.get() != null) {
+                stats.outcome = stopReason.get();
+            }
+            return new ArrayList<Action>();
+        } finally {
+            int frontier = 0;
+            long stored = 0;
+            for (Worker w : workers) {
+                w.addCounts();
+                frontier += w.pQueue.size();
+                stored += w.seen.size();
+            }
+            stats.end(frontier, stored);
+        }
+    }
+
+    private Worker owner(GameState gs) {
+        int h = gs.hashCode();
+        h ^= (h >>> 16);
+        return workers[Math.floorMod(h, workers.length)];
+    }
+
+    private void send(GameState gs) {
+        totalSent.incrementAndGet();
+        inFlight.incrementAndGet();
+        Worker w = owner(gs);
+        w.inbox.add(gs);
+        // The owner sets its idle flag before its last look at the inbox, so either it sees
+        // this state there or we see the flag.
+        if (w.idle) LockSupport.unpark(w.thread);
+    }
+
+    // Only a goal cheaper than every goal found so far replaces it.
+    private void offerGoal(GameState gs) {
+        int cost = gs.getDepth();
+        int current = bestCost.get();
+        while (cost < current) {
+            if (bestCost.compareAndSet(current, cost)) {
+                bestGoal = gs;
+                return;
+            }
+            current = bestCost.get();
+        }
+    }
+
+    // The search is over once no hand-offs are pending, every worker has run out of useful
+    // work, and no hand-off happened while we were looking. A worker only leaves the idle
+    // state by receiving a hand-off, so nothing can restart after this returns true.
+    private boolean quiescent() {
+        long sent = totalSent.get();
+        if (inFlight.get() != 0) return false;
+        for (Worker w : workers) {
+            if (!w.idle) return false;
+        }
+        return inFlight.get() == 0 && totalSent.get() == sent;
+    }
+
+    // Ends the search, recording why unless it already had a reason to end.
+    private void stop(SearchStats.Outcome reason) {
+        stopReason.compareAndSet(null, reason);
+        finish();
+    }
+
+    private void finish() {
+        done = true;
+        for (Worker w : workers) {
+            LockSupport.unpark(w.thread);
+        }
+    }
+
+    private class Worker implements Runnable
+    {
+        private final ConcurrentLinkedQueue<GameState> inbox = new ConcurrentLinkedQueue<GameState>();
+        private final BucketQueue pQueue = new BucketQueue();
+        private final HashMap<GameState, Integer> seen = new HashMap<GameState, Integer>();
+        private final int[] moves = new int[GameState.MAX_MOVES];
+        private volatile boolean idle;
+        private Thread thread;
+
+        // Sizes of pQueue and seen at this worker's last check-in, for the progress reports.
+        private volatile int queued;
+        private volatile int stored;
+
+        // Counts not yet added to stats, and how many more expansions this worker may make
+        // before it checks in again.
+        private long expanded;
+        private long generated;
+        private long duplicates;
+        private int bestH = -1;
+        private long allowance;
+
+        public void run() {
+            try {
+                while (!done) {
+                    if (!inbox.isEmpty()) {
+                        idle = false;
+                        GameState gs;
+                        while ((gs = inbox.poll()) != null) {
+                            consider(gs);
+                            inFlight.decrementAndGet();
+                        }
+                    }
+
+                    GameState gs = pQueue.peek();
+                    if (gs != null && gs.getScore() < bestCost.get()) {
+                        pQueue.poll();
+                        // Stale entry: the same position was re-queued later with a shorter path.
+                        if (gs.getDepth() > seen.get(gs)) continue;
+                        if (gs.isWin()) {
+                            offerGoal(gs);
+                            continue;
+                        }
+                        if (allowance == 0 && !checkIn()) return;
+                        allowance--;
+                        expand(gs);
+                    }
+                    else {
+                        // Anything still queued here can no longer beat the best goal.
+                        pQueue.clear();
+                        idle = true;
+                        if (quiescent()) {
+                            finish();
+                        }
+                        else if (inbox.isEmpty()) {
+                            LockSupport.parkNanos(this, IDLE_NANOS);
+                        }
+                    }
+                }
+            } catch (Throwable t) {
+                failure = t;
+                finish();
+            }
+        }
+
+        // Adds this worker's counts to stats, reports progress, and claims the next batch of
+        // expansions. Returns false, having stopped the search, if it is out of time or
+        // nodes or has been cancelled.
+        private boolean checkIn() {
+            queued = pQueue.size();
+            stored = seen.size();
+            addCounts();
+            int frontier = 0;
+            long held = 0;
+            for (Worker w : workers) {
+                frontier += w.queued;
+                held += w.stored;
+            }
+            synchronized (stats) {
+                if (frontier > stats.peakFrontier) stats.peakFrontier = frontier;
+                stats.checkpoint(frontier, held);
+            }
+
+            if (stats.stopRequested()) {
+                stop(SearchStats.Outcome.CANCELLED);
+                return false;
+            }
+            if (System.nanoTime() > deadline) {
+                stop(SearchStats.Outcome.TIME_LIMIT);
+                return false;
+            }
+            long left = budget.get();
+            while (left > 0) {
+                long claim = Math.min(left, SearchStats.CHECK_INTERVAL);
+                if (budget.compareAndSet(left, left - claim)) {
+                    allowance = claim;
+                    return true;
+                }
+                left = budget.get();
+            }
+            stop(SearchStats.Outcome.NODE_LIMIT);
+            return false;
+        }
+
+        private void addCounts() {
+            synchronized (stats) {
+                stats.nodesExpanded += expanded;
+                stats.nodesGenerated += generated;
+                stats.duplicatesRejected += duplicates;
+                if (bestH >= 0) stats.sawH(bestH);
+            }
+            expanded = 0;
+            generated = 0;
+            duplicates = 0;
+        }
+
+        private void expand(GameState gs) {
+            expanded++;
+            // The start's moves aren't pruned by whatever led to it.
+            int numMoves = gs.generateMoves(moves, (gs == start) ? Action.NO_MOVE : gs.getLastMove());
+            generated += numMoves;
+            for (int i = 0; i < numMoves; i++) {
+                GameState nexState = gs.nextState(moves[i]);
+                if (owner(nexState) == this) {
+                    consider(nexState);
+                }
+                else {
+                    send(nexState);
+                }
+            }
+        }
+
+        // New position, or a cheaper path to one we already have: (re)open it.
+        private void consider(GameState gs) {
+            Integer bestG = seen.get(gs);
+            if (bestG == null || gs.getDepth() < bestG) {
+                seen.put(gs, gs.getDepth());
+                pQueue.offer(gs);
+                int h = gs.h();
+                if (h < bestH || bestH < 0) bestH = h;
+            }
+            else {
+                duplicates++;
+            }
+        }
+    }
+}
@@ -0,0 +1,15 @@
+/**
+ * Which search engine FreeCell.search runs.
+ *
+ *   ASTAR     best-first with a full closed set; best answers, memory grows with the search
+ *   IDA_STAR  iterative-deepening A*; memory grows only with the length of the current path
+ *   BEAM      layer by layer, keeping only the best beamWidth states of each layer
+ *   ANYTIME   weighted A* that finds some solution fast, then shorter ones until time runs out
+ *
+ * @author Van Griffith
+ * @version 18 October 2026
+ */
+public enum SearchMode
+{
+    ASTAR, IDA_STAR, BEAM, ANYTIME
+}
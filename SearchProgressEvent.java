@@ -0,0 +1,45 @@
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * JFR event recorded every so often while a search runs, carrying its counters at that
+ * moment. Costs next to nothing unless a recording has it enabled, e.g.
+ *   java -XX:StartFlightRecording:filename=solve.jfr FreeCell case_MS25_102.txt
+ *
+ * @author Van Griffith
+ * @version 18 October 2026
+ */
+@Name("freecell.SearchProgress")
+@Label("Search Progress")
+@Category("FreeCell")
+@Description("Counters of a running search")
+class SearchProgressEvent extends jdk.jfr.Event
+{
+    @Label("Search Mode")
+    String mode;
+
+    @Label("Nodes Expanded")
+    long nodesExpanded;
+
+    @Label("Nodes Generated")
+    long nodesGenerated;
+
+    @Label("Duplicates Rejected")
+    long duplicatesRejected;
+
+    @Label("Frontier Size")
+    int frontierSize;
+
+    @Label("Nodes Per Second")
+    long nodesPerSecond;
+
+    @Label("Best h")
+    int bestH;
+
+    @Label("Heap Per Node")
+    @DataAmount
+    long heapBytesPerNode;
+}
@@ -0,0 +1,187 @@
+import java.io.PrintStream;
+import jdk.jfr.FlightRecorder;
+
+/**
+ * Counters filled in by a single run of the solver, plus how that run ended.
+ *
+ * The engines also check in here every so often while they run (see checkpoint). While a
+ * JFR recording is running, each check-in records a SearchProgressEvent and the whole run
+ * is recorded as one SearchSummaryEvent. If progress lines were asked for with
+ * reportProgress, a check-in also prints one whenever the interval has gone by.
+ *
+ * Another thread can stop a run early with cancel(); so can interrupting the thread the
+ * search is running on. The engines look for either before every expansion, and end with
+ * the outcome CANCELLED.
+ *
+ * @author Van Griffith
+ * @version 18 October 2026
+ */
+public class SearchStats
+{
+    // How many expansions the engines let go by between check-ins, which is also how often
+    // they look at the clock. Kept small so a tight deadline isn't overshot by much.
+    static final int CHECK_INTERVAL = 256;
+
+    public enum Outcome { SOLVED, UNSOLVABLE, NODE_LIMIT, TIME_LIMIT, OUT_OF_MEMORY, CANCELLED }
+
+    SearchMode mode;
+    Outcome outcome;
+    int solutionLength;
+    long nodesExpanded;      // states taken off the frontier and expanded
+    long nodesGenerated;     // successor states created
+    long duplicatesRejected; // successors dropped because an equal state was already known
+    long cacheHits;          // positions a SolutionCache already had the answer for
+    int frontierSize;        // size of the frontier at the last check-in
+    int peakFrontier;        // largest size the frontier reached
+    long nodesStored;        // states held in memory at the last check-in
+    int bestH = -1;          // lowest h() of any state generated; -1 until there is one
+    long heapBytesPerNode;   // heap grown since the start, per stored state
+    long elapsedNanos;
+
+    private volatile boolean cancelled;
+
+    private long startNanos;
+    private long startHeap;
+    private SearchSummaryEvent summaryEvent;
+
+    private PrintStream progressOut;
+    private long progressIntervalNanos;
+    private long nextProgressNanos;
+
+    public Outcome getOutcome() { return outcome; }
+    public int getSolutionLength() { return solutionLength; }
+    public long getNodesExpanded() { return nodesExpanded; }
+    public long getNodesGenerated() { return nodesGenerated; }
+    public long getDuplicatesRejected() { return duplicatesRejected; }
+    public long getCacheHits() { return cacheHits; }
+    public int getPeakFrontier() { return peakFrontier; }
+    public int getBestH() { return bestH; }
+    public long getElapsedMillis() { return elapsedNanos / 1000000; }
+
+    // Approximate: heap use moves with the garbage collector, not just with the search.
+    public long getHeapBytesPerNode() { return heapBytesPerNode; }
+
+    public long getNodesPerSecond() {
+        return (elapsedNanos == 0) ? 0 : nodesExpanded * 1000000000L / elapsedNanos;
+    }
+
+    /**
+     * Prints a progress line to out every intervalMillis while the search runs. Call before
+     * handing these stats to a search.
+     */
+    public void reportProgress(PrintStream out, long intervalMillis) {
+        progressOut = out;
+        progressIntervalNanos = intervalMillis * 1000000;
+    }
+
+    /**
+     * Asks the search using these stats to stop as soon as it can. Safe to call from any
+     * thread, before or during the search.
+     */
+    public void cancel() {
+        cancelled = true;
+    }
+
+    // Called by the engine before each expansion: true once cancel() has been called or the
+    // thread running the search has been interrupted. The interrupt is left set.
+    boolean stopRequested() {
+        return cancelled || Thread.currentThread().isInterrupted();
+    }
+
+    // Called by the engine as the search starts.
+    void begin(SearchMode mode) {
+        this.mode = mode;
+        outcome = Outcome.UNSOLVABLE;
+        if (jfrRunning()) {
+            summaryEvent = new SearchSummaryEvent();
+            summaryEvent.begin();
+        }
+        startHeap = usedHeap();
+        startNanos = System.nanoTime();
+        nextProgressNanos = startNanos + progressIntervalNanos;
+    }
+
+    // Called by the engine for every state it generates.
+    void sawH(int h) {
+        if (h < bestH || bestH < 0) bestH = h;
+    }
+
+    // Called by the engine every so often with the current size of its frontier and of
+    // everything it is holding on to. Cheap enough to call every CHECK_INTERVAL expansions.
+    void checkpoint(int frontier, long stored) {
+        long now = System.nanoTime();
+        elapsedNanos = now - startNanos;
+        frontierSize = frontier;
+        nodesStored = stored;
+        heapBytesPerNode = (stored == 0) ? 0 : Math.max(0, usedHeap() - startHeap) / stored;
+
+        if (jfrRunning()) {
+            SearchProgressEvent event = new SearchProgressEvent();
+            event.mode = String.valueOf(mode);
+            event.nodesExpanded = nodesExpanded;
+            event.nodesGenerated = nodesGenerated;
+            event.duplicatesRejected = duplicatesRejected;
+            event.frontierSize = frontierSize;
+            event.nodesPerSecond = getNodesPerSecond();
+            event.bestH = bestH;
+            event.heapBytesPerNode = heapBytesPerNode;
+            event.commit();
+        }
+
+        if (progressOut != null && now >= nextProgressNanos) {
+            progressOut.println(progressLine());
+            nextProgressNanos = now + progressIntervalNanos;
+        }
+    }
+
+    // Called by the engine once the search is over, however it ended. Pass 0 for both if the
+    // search has already let go of its frontier.
+    void end(int frontier, long stored) {
+        if (frontier > 0 || stored > 0) {
+            frontierSize = frontier;
+            nodesStored = stored;
+            heapBytesPerNode = (stored == 0) ? 0 : Math.max(0, usedHeap() - startHeap) / stored;
+        }
+        elapsedNanos = System.nanoTime() - startNanos;
+        if (summaryEvent != null && summaryEvent.shouldCommit()) {
+            summaryEvent.mode = String.valueOf(mode);
+            summaryEvent.outcome = String.valueOf(outcome);
+            summaryEvent.solutionLength = solutionLength;
+            summaryEvent.nodesExpanded = nodesExpanded;
+            summaryEvent.nodesGenerated = nodesGenerated;
+            summaryEvent.duplicatesRejected = duplicatesRejected;
+            summaryEvent.peakFrontier = peakFrontier;
+            summaryEvent.nodesPerSecond = getNodesPerSecond();
+            summaryEvent.bestH = bestH;
+            summaryEvent.heapBytesPerNode = heapBytesPerNode;
+            summaryEvent.commit();
+        }
+        summaryEvent = null;
+    }
+
+    // Setting up the event classes costs a few hundred milliseconds the first time, so don't
+    // touch them unless a recording has actually been started.
+    private static boolean jfrRunning() {
+        return FlightRecorder.isInitialized();
+    }
+
+    private static long usedHeap() {
+        Runtime rt = Runtime.getRuntime();
+        return rt.totalMemory() - rt.freeMemory();
+    }
+
+    public String progressLine() {
+        return String.format("%7.1f s  %,d expanded  %,d generated  %,d duplicates  frontier %,d"
+                             + "  %,d nodes/s  best h %d  ~%,d B/node",
+                             elapsedNanos / 1e9, nodesExpanded, nodesGenerated, duplicatesRejected,
+                             frontierSize, getNodesPerSecond(), bestH, heapBytesPerNode);
+    }
+
+    public String toString() {
+        return outcome + ": " + solutionLength + " moves, " + nodesExpanded + " expanded, "
+            + nodesGenerated + " generated, " + duplicatesRejected + " duplicates, " + cacheHits
+            + " cache hits, peak frontier "
+            + peakFrontier + ", " + getNodesPerSecond() + " nodes/s, best h " + bestH + ", ~"
+            + heapBytesPerNode + " B/node, " + getElapsedMillis() + " ms";
+    }
+}
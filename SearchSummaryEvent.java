@@ -0,0 +1,50 @@
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * JFR event spanning one whole search, committed when it ends with the final counters and
+ * how the search ended. See SearchProgressEvent for how to record it.
+ *
+ * @author Van Griffith
+ * @version 18 October 2026
+ */
+@Name("freecell.Search")
+@Label("Search")
+@Category("FreeCell")
+@Description("One run of the solver, start to finish")
+class SearchSummaryEvent extends jdk.jfr.Event
+{
+    @Label("Search Mode")
+    String mode;
+
+    @Label("Outcome")
+    String outcome;
+
+    @Label("Solution Length")
+    int solutionLength;
+
+    @Label("Nodes Expanded")
+    long nodesExpanded;
+
+    @Label("Nodes Generated")
+    long nodesGenerated;
+
+    @Label("Duplicates Rejected")
+    long duplicatesRejected;
+
+    @Label("Peak Frontier")
+    int peakFrontier;
+
+    @Label("Nodes Per Second")
+    long nodesPerSecond;
+
+    @Label("Best h")
+    int bestH;
+
+    @Label("Heap Per Node")
+    @DataAmount
+    long heapBytesPerNode;
+}
@@ -0,0 +1,509 @@
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Remembers, from one run to the next, what the solver found out about positions: a way to
+ * win from there, or that there is none (at all, or within some number of expansions).
+ *
+ * The cache is a directory holding two files. cache.dat holds the records, appended as
+ * they come in. cache.idx is an open-addressing hash table, memory mapped, with one slot
+ * per record: a 64-bit hash of the position's canonical encoding (see
+ * GameState.writeCanonicalBinary), where the record starts in cache.dat, and when it was
+ * last used. Since the key is canonical, equal positions share a record however their
+ * piles and cells are laid out. A stored path is turned into moves for the caller's layout
+ * as it is looked up.
+ *
+ * At most capacity records are kept. Once the cache is full, the least recently used
+ * quarter is dropped and cache.dat is rewritten without them.
+ *
+ * A lookup first checks a Bloom filter in memory, keyed on GameState.hashCode, which the
+ * search has already worked out and which doesn't depend on the layout either. That
+ * check takes no lock, so a position the cache has never seen (nearly every one an A*
+ * search expands) costs a couple of array reads. Only the rest go on to build the
+ * canonical key and probe the index under the lock. The filter is built from cache.dat
+ * when the cache is opened or rebuilt.
+ *
+ * Safe to share between the threads of one process, but not between processes. I/O
+ * failures once the cache is open come out as UncheckedIOException, so the solver's own
+ * signatures don't have to change.
+ *
+ * @author Van Griffith
+ * @version 18 October 2026
+ */
+public class SolutionCache implements Closeable
+{
+    private static final int INDEX_MAGIC = 0x46434358;  // "FCCX"
+    private static final int INDEX_HEADER = 24;         // magic, capacity, count, unused, clock
+    private static final int SLOT_SIZE = 24;            // hash, record offset, last used
+
+    private static final byte SOLVED = 1;
+    private static final byte NO_SOLUTION = 2;
+    // Record layout after its int length: canonical key, actual layout, kind, node budget,
+    // path length, then the path in the actual layout's pile numbers
+    private static final int RECORD_HEADER = 2 * GameState.BINARY_SIZE + 1 + 8 + 4;
+    // Filter bits per record the cache can hold. With two bits set per record, a full cache
+    // sends about one lookup in twenty past the filter for nothing.
+    private static final int FILTER_BITS_PER_RECORD = 8;
+    private static final int READ_BUFFER_SIZE = 1 << 16;
+
+    private final File dataFile;
+    private final File indexFile;
+    private final int capacity;
+    private FileChannel data;
+    private long dataEnd;
+    private FileChannel indexChannel;
+    private MappedByteBuffer index;
+    private int mask;   // number of slots - 1
+    private int count;
+    private long clock; // bumped on every use, so slots can be ordered by last use
+    private final int filterMask; // number of filter bits - 1
+    // Read without the lock, so replaced whole rather than cleared
+    private volatile AtomicLongArray filter;
+
+    /**
+     * What the cache knows about a position.
+     */
+    public static class Entry
+    {
+        private final ArrayList<Action> path;
+        private final long nodeBudget;
+
+        private Entry(ArrayList<Action> path, long nodeBudget) {
+            this.path = path;
+            this.nodeBudget = nodeBudget;
+        }
+
+        public boolean isSolved() { return path != null; }
+
+        // A winning line of play from the position, in its own pile and cell numbers
+        public ArrayList<Action> getPath() { return path; }
+
+        // True if there is no solution at all, not just none within some node budget
+        public boolean isUnsolvable() { return path == null && nodeBudget == Long.MAX_VALUE; }
+
+        // For an unsolved position: how many expansions A* spent without finding a solution
+        public long getNodeBudget() { return nodeBudget; }
+    }
+
+    /**
+     * Opens the cache in the given directory, creating it if need be. An existing cache made
+     * with a different capacity is carried over, keeping its most recently used records.
+     */
+    public SolutionCache(String directory, int capacity) throws IOException {
+        if (capacity < 1) {
+            throw new IllegalArgumentException("cache capacity must be positive: " + capacity);
+        }
+        File dir = new File(directory);
+        if (!dir.isDirectory() && !dir.mkdirs()) {
+            throw new IOException("cannot create cache directory " + directory);
+        }
+        this.capacity = capacity;
+        long filterBits = Math.min(1 << 30, Math.max(64L, (long) FILTER_BITS_PER_RECORD * capacity));
+        filterMask = Integer.highestOneBit((int) filterBits) - 1;
+        dataFile = new File(dir, "cache.dat");
+        indexFile = new File(dir, "cache.idx");
+        data = FileChannel.open(dataFile.toPath(), StandardOpenOption.CREATE, StandardOpenOption.READ,
+                                StandardOpenOption.WRITE);
+        dataEnd = data.size();
+        openIndex();
+        loadFilter();
+    }
+
+    private void openIndex() throws IOException {
+        indexChannel = FileChannel.open(indexFile.toPath(), StandardOpenOption.CREATE,
+                                        StandardOpenOption.READ, StandardOpenOption.WRITE);
+        long size = indexChannel.size();
+        int numSlots = Integer.highestOneBit(2 * capacity - 1) << 1; // at most half full
+        if (size == INDEX_HEADER + (long) numSlots * SLOT_SIZE) {
+            index = indexChannel.map(FileChannel.MapMode.READ_WRITE, 0, size);
+            if (index.getInt(0) == INDEX_MAGIC && index.getInt(4) == capacity) {
+                mask = numSlots - 1;
+                count = index.getInt(8);
+                clock = index.getLong(16);
+                return;
+            }
+        }
+        // New, or made with another capacity: keep what we can of the old slots.
+        long[] old = (size >= INDEX_HEADER) ? liveSlots(indexChannel.map(FileChannel.MapMode.READ_ONLY, 0, size))
+                                            : new long[0];
+        index = null;
+        indexChannel.close();
+        rebuild(old, numSlots, false);
+    }
+
+    /**
+     * What the cache knows about gs, with any path given in gs's own pile and cell numbers,
+     * or null if it knows nothing.
+     */
+    public Entry lookup(GameState gs) {
+        if (!mightContain(gs.hashCode())) return null;
+        return probe(gs);
+    }
+
+    private synchronized Entry probe(GameState gs) {
+        if (count == 0) return null;
+        byte[] key = canonicalKey(gs);
+        long hash = hash(key);
+        try {
+            for (int slot = (int) hash & mask; slotHash(slot) != 0; slot = (slot + 1) & mask) {
+                if (slotHash(slot) != hash) continue;
+                ByteBuffer record = readRecord(slotOffset(slot));
+                if (record == null || !sameKey(record, key)) continue;
+                touch(slot);
+                return toEntry(record, gs);
+            }
+            return null;
+        }
+        catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Records a winning line of play from start. Every position along the way is stored too,
+     * with the rest of the line, so a later search reaching any of them can stop there. They
+     * go in from the end back to start, so start is the last to be evicted.
+     */
+    public synchronized void storeSolution(GameState start, List<Action> actions) {
+        GameState[] line = new GameState[actions.size()];
+        GameState gs = new GameState(start);
+        for (int k = 0; k < actions.size(); k++) {
+            line[k] = new GameState(gs);
+            if (!gs.apply(actions.get(k))) {
+                throw new IllegalArgumentException("move " + (k+1) + " (" + actions.get(k) + ") is illegal");
+            }
+        }
+        for (int k = line.length - 1; k >= 0; k--) {
+            store(line[k], SOLVED, 0, actions.subList(k, actions.size()));
+        }
+    }
+
+    /**
+     * Records that A* found no solution from gs within nodeBudget expansions; pass
+     * Long.MAX_VALUE if it ran out of positions, proving there is none.
+     */
+    public synchronized void storeNoSolution(GameState gs, long nodeBudget) {
+        store(gs, NO_SOLUTION, nodeBudget, null);
+    }
+
+    public synchronized int size() {
+        return count;
+    }
+
+    private void store(GameState gs, byte kind, long nodeBudget, List<Action> path) {
+        byte[] key = canonicalKey(gs);
+        long hash = hash(key);
+        try {
+            int slot = (int) hash & mask;
+            for (; slotHash(slot) != 0; slot = (slot + 1) & mask) {
+                if (slotHash(slot) != hash) continue;
+                ByteBuffer record = readRecord(slotOffset(slot));
+                if (record == null || !sameKey(record, key)) continue;
+                touch(slot);
+                if (!improves(record, kind, nodeBudget, path)) return;
+                // Replace it: the old record stays in cache.dat until the next rebuild.
+                index.putLong(slotAt(slot) + 8, append(key, gs, kind, nodeBudget, path));
+                return;
+            }
+            if (count >= capacity) {
+                evict();
+                store(gs, kind, nodeBudget, path);
+                return;
+            }
+            long offset = append(key, gs, kind, nodeBudget, path);
+            index.putLong(slotAt(slot), hash);
+            index.putLong(slotAt(slot) + 8, offset);
+            index.putInt(8, ++count);
+            touch(slot);
+        }
+        catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    // A solution beats no solution and a shorter one beats a longer one; between two
+    // failures, the bigger budget says more.
+    private static boolean improves(ByteBuffer record, byte kind, long nodeBudget, List<Action> path) {
+        byte oldKind = record.get(2 * GameState.BINARY_SIZE);
+        if (kind != oldKind) return kind == SOLVED;
+        if (kind == SOLVED) return path.size() < record.getInt(2 * GameState.BINARY_SIZE + 9);
+        return nodeBudget > record.getLong(2 * GameState.BINARY_SIZE + 1);
+    }
+
+    private long append(byte[] key, GameState gs, byte kind, long nodeBudget, List<Action> path)
+            throws IOException {
+        int pathBytes = 0;
+        if (path != null) {
+            for (Action a : path) pathBytes += a.binarySize();
+        }
+        ByteBuffer buf = ByteBuffer.allocate(4 + RECORD_HEADER + pathBytes);
+        buf.putInt(RECORD_HEADER + pathBytes);
+        buf.put(key);
+        gs.writeBinary(buf);
+        buf.put(kind).putLong(nodeBudget).putInt(path == null ? 0 : path.size());
+        if (path != null) {
+            for (Action a : path) a.writeBinary(buf);
+        }
+        buf.flip();
+        long offset = dataEnd;
+        while (buf.hasRemaining()) {
+            dataEnd += data.write(buf, dataEnd);
+        }
+        addToFilter(filter, gs.hashCode());
+        return offset;
+    }
+
+    // The record at offset, not counting its length, or null if the file ends first
+    private ByteBuffer readRecord(long offset) throws IOException {
+        ByteBuffer len = ByteBuffer.allocate(4);
+        if (!readFully(len, offset)) return null;
+        int length = len.getInt(0);
+        if (length < RECORD_HEADER || offset + 4 + length > dataEnd) return null;
+        ByteBuffer record = ByteBuffer.allocate(length);
+        return readFully(record, offset + 4) ? record : null;
+    }
+
+    private boolean readFully(ByteBuffer buf, long offset) throws IOException {
+        while (buf.hasRemaining()) {
+            int n = data.read(buf, offset + buf.position());
+            if (n < 0) return false;
+        }
+        buf.flip();
+        return true;
+    }
+
+    private static boolean sameKey(ByteBuffer record, byte[] key) {
+        for (int i = 0; i < key.length; i++) {
+            if (record.get(i) != key[i]) return false;
+        }
+        return true;
+    }
+
+    // Rebuilds the stored path in gs's layout. The path was stored in the layout of the
+    // position it was found from, which holds the same piles as gs, maybe in other places.
+    private static Entry toEntry(ByteBuffer record, GameState gs) {
+        record.position(GameState.BINARY_SIZE);
+        GameState stored = GameState.readBinary(record);
+        byte kind = record.get();
+        long nodeBudget = record.getLong();
+        int length = record.getInt();
+        if (kind != SOLVED) return new Entry(null, nodeBudget);
+
+        int[] storedOrder = stored.canonicalPileOrder();
+        int[] order = gs.canonicalPileOrder();
+        int[] pileMap = new int[9];
+        for (int i = 0; i < 8; i++) {
+            pileMap[storedOrder[i] + 1] = order[i] + 1;
+        }
+        ArrayList<Action> path = new ArrayList<Action>(length);
+        GameState here = new GameState(gs);
+        for (int i = 0; i < length; i++) {
+            Action a = Action.readBinary(record, stored);
+            stored.apply(a);
+            int card = a.getCard().getIndex();
+            int src = a.fromCell() ? here.cellOf(card) : pileMap[a.get_src_pile()];
+            int dest = a.get_dest_pile();
+            if (dest >= 1 && dest <= 8) dest = pileMap[dest];
+            int move = Action.encode(a.fromCell(), src, card, dest, a.get_num_cards());
+            if (src < 0 || !here.apply(move)) {
+                throw new IllegalStateException("cached path does not replay");
+            }
+            path.add(Action.fromMove(move));
+        }
+        return new Entry(path, nodeBudget);
+    }
+
+    // False only if no record was ever stored for a position with this hash code
+    private boolean mightContain(int hashCode) {
+        AtomicLongArray bits = filter;
+        int one = hashCode & filterMask;
+        int two = secondFilterBit(hashCode) & filterMask;
+        return (bits.get(one >>> 6) & (1L << one)) != 0 && (bits.get(two >>> 6) & (1L << two)) != 0;
+    }
+
+    private void addToFilter(AtomicLongArray bits, int hashCode) {
+        int one = hashCode & filterMask;
+        int two = secondFilterBit(hashCode) & filterMask;
+        bits.getAndUpdate(one >>> 6, w -> w | (1L << one));
+        bits.getAndUpdate(two >>> 6, w -> w | (1L << two));
+    }
+
+    // hashCode is already well mixed; this just takes its bits in another order.
+    private static int secondFilterBit(int hashCode) {
+        return Integer.rotateLeft(hashCode, 16) * 0x9E3779B1;
+    }
+
+    /**
+     * Makes a new filter holding every record in cache.dat, reading the file from one end to
+     * the other. Replaced records that haven't been dropped by a rebuild yet are in there
+     * too; a stray bit only sends a lookup on to the index.
+     */
+    private void loadFilter() throws IOException {
+        AtomicLongArray bits = new AtomicLongArray((filterMask >>> 6) + 1);
+        ByteBuffer buf = ByteBuffer.allocate(READ_BUFFER_SIZE);
+        buf.flip();
+        long bufStart = 0; // where in cache.dat the buffer's first byte came from
+        while (true) {
+            if (buf.remaining() < 4 + 2 * GameState.BINARY_SIZE) {
+                bufStart += buf.position();
+                buf.compact();
+                while (buf.hasRemaining() && bufStart + buf.position() < dataEnd) {
+                    if (data.read(buf, bufStart + buf.position()) < 0) break;
+                }
+                buf.flip();
+                if (buf.remaining() < 4 + 2 * GameState.BINARY_SIZE) break;
+            }
+            int start = buf.position();
+            int length = buf.getInt(start);
+            if (length < RECORD_HEADER) break;
+            buf.position(start + 4 + GameState.BINARY_SIZE);
+            addToFilter(bits, GameState.readBinary(buf).hashCode());
+            long next = bufStart + start + 4 + length;
+            if (next <= bufStart + buf.limit()) {
+                buf.position((int) (next - bufStart));
+            }
+            else {
+                bufStart = next;
+                buf.clear().flip();
+            }
+        }
+        filter = bits;
+    }
+
+    private static byte[] canonicalKey(GameState gs) {
+        ByteBuffer buf = ByteBuffer.allocate(GameState.BINARY_SIZE);
+        gs.writeCanonicalBinary(buf);
+        return buf.array();
+    }
+
+    // FNV-1a, then MurmurHash3's 64-bit finalizer to spread it; 0 marks an empty slot
+    private static long hash(byte[] key) {
+        long h = 0xCBF29CE484222325L;
+        for (byte b : key) {
+            h = (h ^ (b & 0xFF)) * 0x100000001B3L;
+        }
+        h ^= h >>> 33;
+        h *= 0xFF51AFD7ED558CCDL;
+        h ^= h >>> 33;
+        h *= 0xC4CEB9FE1A85EC53L;
+        h ^= h >>> 33;
+        return (h == 0) ? 1 : h;
+    }
+
+    private static int slotAt(int slot) {
+        return INDEX_HEADER + slot * SLOT_SIZE;
+    }
+
+    private long slotHash(int slot) {
+        return index.getLong(slotAt(slot));
+    }
+
+    private long slotOffset(int slot) {
+        return index.getLong(slotAt(slot) + 8);
+    }
+
+    private void touch(int slot) {
+        index.putLong(slotAt(slot) + 16, ++clock);
+        index.putLong(16, clock);
+    }
+
+    // Drops the least recently used quarter of the records.
+    private void evict() throws IOException {
+        long[] live = liveSlots(index);
+        index.force();
+        index = null;
+        indexChannel.close();
+        rebuild(live, mask + 1, true);
+        loadFilter();
+    }
+
+    // Every occupied slot of the index in buf, as (hash, offset, last used) triples
+    private static long[] liveSlots(ByteBuffer buf) {
+        int numSlots = (buf.capacity() - INDEX_HEADER) / SLOT_SIZE;
+        long[] live = new long[3 * numSlots];
+        int n = 0;
+        for (int slot = 0; slot < numSlots; slot++) {
+            long hash = buf.getLong(slotAt(slot));
+            if (hash == 0) continue;
+            live[n++] = hash;
+            live[n++] = buf.getLong(slotAt(slot) + 8);
+            live[n++] = buf.getLong(slotAt(slot) + 16);
+        }
+        return Arrays.copyOf(live, n);
+    }
+
+    /**
+     * Makes a new index with numSlots slots holding the most recently used of the given
+     * slots: all of them that fit, or only three quarters of capacity when evicting. The
+     * records they point at are copied into a fresh cache.dat, leaving the garbage behind.
+     */
+    private void rebuild(long[] live, int numSlots, boolean evicting) throws IOException {
+        int n = live.length / 3;
+        int keep = Math.min(n, evicting ? capacity - capacity / 4 - 1 : capacity);
+        long[] byAge = new long[n];
+        for (int i = 0; i < n; i++) {
+            byAge[i] = live[3*i + 2];
+        }
+        Arrays.sort(byAge);
+        long cutoff = (keep == 0) ? Long.MAX_VALUE : byAge[n - keep];
+
+        File newData = new File(dataFile.getPath() + ".tmp");
+        Files.deleteIfExists(indexFile.toPath());
+        indexChannel = FileChannel.open(indexFile.toPath(), StandardOpenOption.CREATE_NEW,
+                                        StandardOpenOption.READ, StandardOpenOption.WRITE);
+        index = indexChannel.map(FileChannel.MapMode.READ_WRITE, 0, INDEX_HEADER + (long) numSlots * SLOT_SIZE);
+        mask = numSlots - 1;
+        count = 0;
+        long lastUsed = 0;
+        try (FileChannel out = FileChannel.open(newData.toPath(), StandardOpenOption.CREATE,
+                                                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            long outEnd = 0;
+            for (int i = 0; i < n; i++) {
+                if (live[3*i + 2] < cutoff) continue;
+                ByteBuffer record = readRecord(live[3*i + 1]);
+                if (record == null) continue;
+                ByteBuffer len = ByteBuffer.allocate(4).putInt(0, record.capacity());
+                long offset = outEnd;
+                while (len.hasRemaining()) outEnd += out.write(len, outEnd);
+                record.rewind();
+                while (record.hasRemaining()) outEnd += out.write(record, outEnd);
+
+                int slot = (int) live[3*i] & mask;
+                while (slotHash(slot) != 0) slot = (slot + 1) & mask;
+                index.putLong(slotAt(slot), live[3*i]);
+                index.putLong(slotAt(slot) + 8, offset);
+                index.putLong(slotAt(slot) + 16, live[3*i + 2]);
+                lastUsed = Math.max(lastUsed, live[3*i + 2]);
+                count++;
+            }
+        }
+        data.close();
+        Files.move(newData.toPath(), dataFile.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        data = FileChannel.open(dataFile.toPath(), StandardOpenOption.READ, StandardOpenOption.WRITE);
+        dataEnd = data.size();
+
+        clock = Math.max(clock, lastUsed);
+        index.putInt(0, INDEX_MAGIC);
+        index.putInt(4, capacity);
+        index.putInt(8, count);
+        index.putLong(16, clock);
+    }
+
+    public synchronized void close() throws IOException {
+        if (index != null) index.force();
+        indexChannel.close();
+        data.close();
+    }
+}
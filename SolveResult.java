@@ -0,0 +1,32 @@
+import java.util.ArrayList;
+
+/**
+ * What a call to FreeCell.solveWithStats found, together with the counters of the search
+ * that found it.
+ *
+ * @author Van Griffith
+ * @version 18 October 2026
+ */
+public class SolveResult
+{
+    private final ArrayList<Action> actions;
+    private final SearchStats stats;
+
+    public SolveResult(ArrayList<Action> actions, SearchStats stats) {
+        this.actions = actions;
+        this.stats = stats;
+    }
+
+    // The winning line of play, or an empty list if none was found
+    public ArrayList<Action> getActions() {
+        return actions;
+    }
+
+    public SearchStats getStats() {
+        return stats;
+    }
+
+    public boolean isSolved() {
+        return stats.getOutcome() == SearchStats.Outcome.SOLVED;
+    }
+}
@@ -0,0 +1,327 @@
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.PrintWriter;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Keeps one JVM solving positions for as long as it is fed them, so the JIT stays warm and
+ * what one solve learns is there for the next.
+ *
+ * Usage: java SolverServer [options]
+ *   -port n       listen on port n of the loopback interface; without it, positions are
+ *                 read from stdin and the server exits at the end of it
+ *   -threads n    positions solved at once (default: one per core)
+ *   -nodes n      give up on a position after expanding n states
+ *   -time ms      give up on a position after ms milliseconds
+ *   -mode m       astar (default), ida_star, beam or anytime
+ *   -beam w       beam width for -mode beam (default 1000)
+ *   -cache dir    where to keep the cache of positions shared by all solves (default: a
+ *                 temporary directory, deleted on exit)
+ *   -cache-size n most positions the cache holds (default 1000000)
+ *   -endgame file make h() exact near the end of a game with this endgame table
+ *   -heuristic n  longest blocker cycle h() looks for, in piles: 1 to 4 (default 2)
+ *   -warmup n     solve Microsoft deals 1 to n before taking requests, to warm up the JIT
+ *
+ * A request is a position in the text format of GameState.toString: ten lines, one for
+ * the foundations, one for the cells and one per pile. Each gets one line back: the
+ * outcome, the number of moves, then the moves as Action strings, all separated by
+ * spaces, e.g. "SOLVED 4 1QD9 aKD9 1KS9 2KC9".
+ *
+ * Every line is checked against what should come next in a position. A position with a
+ * line missing, or any other run of lines that isn't a position, gets a single
+ * "BAD_POSITION 0", and reading picks up again at the next foundations line, so one bad
+ * request never shifts the answers to the ones after it. A blank line ends a position
+ * that is still incomplete right away; otherwise blank lines are ignored. A position
+ * that reads fine but doesn't add up also gets "BAD_POSITION 0" rather than a search: a
+ * foundation above 13, cells and piles that don't hold exactly the cards not yet played,
+ * each once, or a pile that could grow taller than a position record allows.
+ *
+ * A connection (or stdin) may send any number of positions without waiting for answers.
+ * They are all solved at the same time, on one pool shared by every connection, and the
+ * answers come back in the order the positions were sent.
+ *
+ * @author Van Griffith
+ * @version 18 October 2026
+ */
+public class SolverServer
+{
+    private static final int DEFAULT_CACHE_SIZE = 1000000;
+    private static final int LINES_PER_POSITION = 10;
+    private static final String BAD_POSITION = "BAD_POSITION 0";
+    // Node budget for each warm-up deal: plenty to get every hot method compiled.
+    private static final long WARMUP_NODES = 20000;
+
+    private final long nodeLimit;
+    private final long timeLimitMillis;
+    private final SearchMode mode;
+    private final int beamWidth;
+    private final SolutionCache cache;
+    private final ExecutorService pool;
+    private boolean closed;
+
+    public SolverServer(long nodeLimit, long timeLimitMillis, SearchMode mode, int beamWidth,
+                        SolutionCache cache, int threads) {
+        this.nodeLimit = nodeLimit;
+        this.timeLimitMillis = timeLimitMillis;
+        this.mode = mode;
+        this.beamWidth = beamWidth;
+        this.cache = cache;
+        this.pool = Executors.newFixedThreadPool(threads);
+    }
+
+    public static void main(String[] args) {
+        int port = -1;
+        int threads = Runtime.getRuntime().availableProcessors();
+        long nodeLimit = Long.MAX_VALUE;
+        long timeLimit = Long.MAX_VALUE;
+        SearchMode mode = SearchMode.ASTAR;
+        int beamWidth = 1000;
+        String cacheDir = null;
+        int cacheSize = DEFAULT_CACHE_SIZE;
+        String endgameFile = null;
+        int warmupDeals = 0;
+
+        for (int i = 0; i < args.length; i++) {
+            if (args[i].equals("-port")) port = Integer.parseInt(args[++i]);
+            else if (args[i].equals("-threads")) threads = Integer.parseInt(args[++i]);
+            else if (args[i].equals("-nodes")) nodeLimit = Long.parseLong(args[++i]);
+            else if (args[i].equals("-time")) timeLimit = Long.parseLong(args[++i]);
+            else if (args[i].equals("-mode")) mode = SearchMode.valueOf(args[++i].toUpperCase());
+            else if (args[i].equals("-beam")) beamWidth = Integer.parseInt(args[++i]);
+            else if (args[i].equals("-cache")) cacheDir = args[++i];
+            else if (args[i].equals("-cache-size")) cacheSize = Integer.parseInt(args[++i]);
+            else if (args[i].equals("-endgame")) endgameFile = args[++i];
+            else if (args[i].equals("-heuristic")) GameState.setHeuristicLevel(Integer.parseInt(args[++i]));
+            else if (args[i].equals("-warmup")) warmupDeals = Integer.parseInt(args[++i]);
+            else {
+                System.err.println("unknown option " + args[i]);
+                return;
+            }
+        }
+
+        SolutionCache cache;
+        try {
+            if (endgameFile != null) GameState.setEndgameTable(EndgameTable.open(endgameFile));
+            if (cacheDir == null) cacheDir = temporaryCacheDir();
+            cache = new SolutionCache(cacheDir, cacheSize);
+        }
+        catch (IOException e) {
+            System.err.println("could not start: " + e.getMessage());
+            return;
+        }
+
+        SolverServer server = new SolverServer(nodeLimit, timeLimit, mode, beamWidth, cache, threads);
+        Runtime.getRuntime().addShutdownHook(new Thread(server::close));
+        if (warmupDeals > 0) {
+            long start = System.nanoTime();
+            server.warmUp(warmupDeals);
+            System.err.printf("Warmed up on %d deals in %.1f s%n", warmupDeals, (System.nanoTime() - start) / 1e9);
+        }
+        try {
+            if (port < 0) {
+                server.serve(System.in, System.out);
+                server.close();
+            }
+            else {
+                server.listen(port);
+            }
+        }
+        catch (IOException e) {
+            System.err.println("server stopped: " + e.getMessage());
+            server.close();
+        }
+    }
+
+    // A fresh directory that, along with the cache files in it, goes away when the JVM exits.
+    private static String temporaryCacheDir() throws IOException {
+        File dir = Files.createTempDirectory("freecell-cache").toFile();
+        // deleteOnExit runs in reverse order: the files first, then the directory.
+        dir.deleteOnExit();
+        new File(dir, "cache.dat").deleteOnExit();
+        new File(dir, "cache.idx").deleteOnExit();
+        return dir.getPath();
+    }
+
+    // Solves Microsoft deals 1 to n on the pool and waits for them. The cache is left out,
+    // so the warm-up doesn't answer itself from it halfway through.
+    public void warmUp(int n) {
+        ArrayList<CompletableFuture<SolveResult>> solves = new ArrayList<CompletableFuture<SolveResult>>();
+        for (int i = 1; i <= n; i++) {
+            solves.add(FreeCell.solveAsync(GameState.microsoftDeal(i), mode, beamWidth, WARMUP_NODES,
+                                           timeLimitMillis, pool));
+        }
+        CompletableFuture.allOf(solves.toArray(new CompletableFuture<?>[0])).join();
+    }
+
+    /**
+     * Accepts connections on the given port of the loopback interface until the JVM is
+     * stopped, serving each on a thread of its own.
+     */
+    public void listen(int port) throws IOException {
+        try (ServerSocket listener = new ServerSocket(port, 50, InetAddress.getLoopbackAddress())) {
+            System.err.println("Listening on " + listener.getLocalSocketAddress());
+            while (true) {
+                Socket socket = listener.accept();
+                Thread t = new Thread(() -> serveConnection(socket), "connection " + socket.getPort());
+                t.setDaemon(true);
+                t.start();
+            }
+        }
+    }
+
+    private void serveConnection(Socket socket) {
+        try (Socket s = socket) {
+            serve(s.getInputStream(), s.getOutputStream());
+        }
+        catch (IOException e) {
+            System.err.println("connection " + socket.getPort() + " dropped: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Reads positions from in until it ends, solving each on the pool as soon as it has been
+     * read, and writes the answers to out in the same order. Returns once every answer has
+     * been written.
+     */
+    public void serve(InputStream in, OutputStream out) throws IOException {
+        BufferedReader reader = new BufferedReader(new InputStreamReader(in));
+        PrintWriter writer = new PrintWriter(out);
+        // Each answer is written once the one before it has been, whichever solve ends first.
+        CompletableFuture<Void> written = CompletableFuture.completedFuture(null);
+        StringBuilder position = new StringBuilder();
+        int lines = 0;
+        boolean bad = false; // in a run of lines that isn't a position
+        String line;
+        while ((line = reader.readLine()) != null) {
+            String trimmed = line.trim();
+            if (trimmed.isEmpty()) {
+                // A blank line settles whatever is left unfinished.
+                if (bad || lines > 0) {
+                    written = reply(written, CompletableFuture.completedFuture(BAD_POSITION), writer);
+                    bad = false;
+                    position.setLength(0);
+                    lines = 0;
+                }
+                continue;
+            }
+            String[] tokens = trimmed.split("\\s+");
+            if (lines > 0 && !fits(lines, tokens)) {
+                // Cut short: what was read of it and whatever follows, up to the next
+                // position, go down as one bad request.
+                bad = true;
+                position.setLength(0);
+                lines = 0;
+            }
+            if (lines == 0 && !fits(0, tokens)) {
+                bad = true;
+                continue;
+            }
+            if (bad) {
+                written = reply(written, CompletableFuture.completedFuture(BAD_POSITION), writer);
+                bad = false;
+            }
+            position.append(line).append('\n');
+            if (++lines == LINES_PER_POSITION) {
+                written = reply(written, solve(position.toString()), writer);
+                position.setLength(0);
+                lines = 0;
+            }
+        }
+        if (bad || lines > 0) {
+            written = reply(written, CompletableFuture.completedFuture(BAD_POSITION), writer);
+        }
+        written.join();
+    }
+
+    // Writes answer once everything before it has been written
+    private static CompletableFuture<Void> reply(CompletableFuture<Void> written, CompletableFuture<String> answer,
+                                                 PrintWriter writer) {
+        return written.thenCombine(answer, (previous, text) -> text).thenAccept(text -> {
+            writer.println(text);
+            writer.flush();
+        });
+    }
+
+    // Whether a line made of these tokens can be line number index (from 0) of a position:
+    // four numbers for the foundations, then the number of free cells and the cards in the
+    // others, then for each pile its cards, or "--" if it is empty.
+    private static boolean fits(int index, String[] tokens) {
+        if (index == 0) {
+            if (tokens.length != 4) return false;
+            for (String t : tokens) {
+                if (!isNumber(t)) return false;
+            }
+            return true;
+        }
+        if (index == 1) {
+            if (!isNumber(tokens[0]) || tokens[0].length() != 1 || tokens[0].charAt(0) > '4') return false;
+            if (tokens.length != 1 + 4 - (tokens[0].charAt(0) - '0')) return false;
+            for (int i = 1; i < tokens.length; i++) {
+                if (!isCard(tokens[i])) return false;
+            }
+            return true;
+        }
+        if (tokens.length == 1 && tokens[0].equals("--")) return true;
+        for (String t : tokens) {
+            if (!isCard(t)) return false;
+        }
+        return true;
+    }
+
+    private static boolean isNumber(String token) {
+        for (int i = 0; i < token.length(); i++) {
+            if (!Character.isDigit(token.charAt(i))) return false;
+        }
+        return !token.isEmpty();
+    }
+
+    private static boolean isCard(String token) {
+        return token.length() == 2 && Card.of(token.charAt(0), token.charAt(1)) != Card.JOKER;
+    }
+
+    // The answer line for one position in text form
+    private CompletableFuture<String> solve(String text) {
+        GameState start;
+        try {
+            start = GameState.fromString(text);
+        }
+        catch (RuntimeException e) {
+            return CompletableFuture.completedFuture(BAD_POSITION);
+        }
+        return FreeCell.solveAsync(start, mode, beamWidth, nodeLimit, timeLimitMillis, cache, pool)
+                       .handle((result, e) -> (e == null) ? answer(result) : "ERROR 0 " + e);
+    }
+
+    private static String answer(SolveResult result) {
+        StringBuilder sb = new StringBuilder();
+        sb.append(result.getStats().getOutcome()).append(' ').append(result.getActions().size());
+        for (Action a : result.getActions()) {
+            sb.append(' ').append(a);
+        }
+        return sb.toString();
+    }
+
+    // Stops taking work and closes the cache. Solves still running are abandoned.
+    public synchronized void close() {
+        if (closed) return;
+        closed = true;
+        pool.shutdownNow();
+        try {
+            cache.close();
+        }
+        catch (IOException e) {
+            System.err.println("could not close cache: " + e.getMessage());
+        }
+    }
+}
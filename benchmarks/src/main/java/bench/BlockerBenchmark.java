@@ -0,0 +1,78 @@
+package bench;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * The blocker count behind h(), for a whole tableau: singlePileBlockers plus
+ * doublePileBlockers for every pair of piles, which is how h() used to count, against
+ * cycleBlockers at each heuristic level. Positions are picked as in StateBenchmark.
+ *
+ * apply and undo run cycleBlockers on every move, so it must not allocate. Run with
+ * -prof gc to check: gc.alloc.rate.norm should be 0 B/op for the cycleBlockers benchmarks
+ * (and for StateBenchmark.applyUndo).
+ *
+ * @author Van Griffith
+ * @version 18 October 2026
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class BlockerBenchmark
+{
+    @Param({"1", "2", "3"})
+    public long seed;
+
+    @Param({"20"})
+    public int movesIn;
+
+    private Object state;
+    private final long[] blockers = new long[8];
+
+    @Setup
+    public void setUp() {
+        state = Solver.midGame(seed, movesIn);
+    }
+
+    @Benchmark
+    public long doublePileBlockers() {
+        long total = 0;
+        for (int pile = 0; pile < 8; pile++) {
+            long blockers = Solver.singlePileBlockers(state, pile, 0L);
+            for (int other = 0; other < 8; other++) {
+                if (other != pile) blockers = Solver.doublePileBlockers(state, pile, other, blockers);
+            }
+            total += Long.bitCount(blockers);
+        }
+        return total;
+    }
+
+    @Benchmark
+    public long[] cycleBlockers2() {
+        return Solver.cycleBlockers(state, 2, blockers);
+    }
+
+    @Benchmark
+    public long[] cycleBlockers3() {
+        return Solver.cycleBlockers(state, 3, blockers);
+    }
+
+    @Benchmark
+    public long[] cycleBlockers4() {
+        return Solver.cycleBlockers(state, 4, blockers);
+    }
+}
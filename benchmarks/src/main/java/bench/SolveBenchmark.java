@@ -0,0 +1,58 @@
+package bench;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * End-to-end A* on the deals that ship with the repository, the same search FreeCell.solve
+ * runs (minus its printing).
+ *
+ * The deal files are looked up in the parent directory first, then the current one, so this
+ * works when run from benchmarks/ or from the top of the repository.
+ *
+ * @author Van Griffith
+ * @version 18 October 2026
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class SolveBenchmark
+{
+    @Param({"small_4", "minimal_52", "easy_56", "MS5152_82", "MS25_102"})
+    public String deal;
+
+    private Object start;
+
+    @Setup
+    public void setUp() {
+        String name = "case_" + deal + ".txt";
+        File file = new File("..", name);
+        if (!file.exists()) file = new File(name);
+        start = Solver.dealFromFile(file.getPath());
+    }
+
+    @Benchmark
+    public ArrayList<?> solve() {
+        ArrayList<?> solution = Solver.solve(start);
+        if (solution.isEmpty()) {
+            throw new IllegalStateException(deal + " was not solved");
+        }
+        return solution;
+    }
+}
@@ -0,0 +1,255 @@
+package bench;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.util.ArrayList;
+import java.util.Random;
+
+/**
+ * The solver's entry points, as seen from the benchmarks.
+ *
+ * JMH won't accept benchmarks in the default package, and a class in a named package can't
+ * import the solver's classes, which are all in the default package. So the benchmarks reach
+ * them through method handles instead, typed with Object in place of GameState. The handles
+ * are static finals, which the JIT treats as constants and inlines straight through, so the
+ * calls cost the same as direct ones.
+ *
+ * @author Van Griffith
+ * @version 18 October 2026
+ */
+final class Solver
+{
+    private static final MethodHandles.Lookup LOOKUP = MethodHandles.publicLookup();
+
+    private static final Class<?> GAME_STATE = load("GameState");
+    private static final Class<?> SEARCH_STATS = load("SearchStats");
+
+    static final int MAX_MOVES = 256; // GameState.MAX_MOVES
+
+    // new GameState(Random)
+    private static final MethodHandle RANDOM_DEAL = constructor(GAME_STATE, Random.class);
+    // new GameState(String)
+    private static final MethodHandle DEAL_FROM_FILE = constructor(GAME_STATE, String.class);
+    // new GameState(GameState)
+    private static final MethodHandle COPY = constructor(GAME_STATE, GAME_STATE);
+    // new SearchStats()
+    private static final MethodHandle NEW_STATS = constructor(SEARCH_STATS);
+
+    private static final MethodHandle H = virtual("h", int.class);
+    private static final MethodHandle LEGAL_ACTIONS = virtual("getLegalActions", ArrayList.class);
+    private static final MethodHandle GENERATE_MOVES = virtual("generateMoves", int.class, int[].class);
+    private static final MethodHandle NEXT_STATE = virtual("nextState", GAME_STATE, int.class);
+    private static final MethodHandle APPLY = virtual("apply", boolean.class, int.class);
+    private static final MethodHandle UNDO = virtual("undo", void.class, int.class);
+    private static final MethodHandle IS_WIN = virtual("isWin", boolean.class);
+    private static final MethodHandle SINGLE_PILE_BLOCKERS =
+        virtual("singlePileBlockers", long.class, int.class, long.class);
+    private static final MethodHandle DOUBLE_PILE_BLOCKERS =
+        virtual("doublePileBlockers", long.class, int.class, int.class, long.class);
+    private static final MethodHandle CYCLE_BLOCKERS =
+        virtual("cycleBlockers", void.class, int.class, long[].class);
+
+    // FreeCell.search(GameState, long, long, SearchStats): the A* that FreeCell.solve runs,
+    // without the printing
+    private static final MethodHandle SEARCH = erase(find(load("FreeCell"), "search",
+        MethodType.methodType(ArrayList.class, GAME_STATE, long.class, long.class, SEARCH_STATS), true));
+
+    private Solver() {}
+
+    static Object randomDeal(Random rng) {
+        try {
+            return (Object) RANDOM_DEAL.invokeExact(rng);
+        } catch (Throwable t) {
+            throw rethrow(t);
+        }
+    }
+
+    static Object dealFromFile(String filename) {
+        try {
+            return (Object) DEAL_FROM_FILE.invokeExact(filename);
+        } catch (Throwable t) {
+            throw rethrow(t);
+        }
+    }
+
+    static Object copy(Object gs) {
+        try {
+            return (Object) COPY.invokeExact(gs);
+        } catch (Throwable t) {
+            throw rethrow(t);
+        }
+    }
+
+    static int h(Object gs) {
+        try {
+            return (int) H.invokeExact(gs);
+        } catch (Throwable t) {
+            throw rethrow(t);
+        }
+    }
+
+    static ArrayList<?> legalActions(Object gs) {
+        try {
+            return (ArrayList<?>) LEGAL_ACTIONS.invokeExact(gs);
+        } catch (Throwable t) {
+            throw rethrow(t);
+        }
+    }
+
+    static int generateMoves(Object gs, int[] moves) {
+        try {
+            return (int) GENERATE_MOVES.invokeExact(gs, moves);
+        } catch (Throwable t) {
+            throw rethrow(t);
+        }
+    }
+
+    static Object nextState(Object gs, int move) {
+        try {
+            return (Object) NEXT_STATE.invokeExact(gs, move);
+        } catch (Throwable t) {
+            throw rethrow(t);
+        }
+    }
+
+    static boolean apply(Object gs, int move) {
+        try {
+            return (boolean) APPLY.invokeExact(gs, move);
+        } catch (Throwable t) {
+            throw rethrow(t);
+        }
+    }
+
+    static void undo(Object gs, int move) {
+        try {
+            UNDO.invokeExact(gs, move);
+        } catch (Throwable t) {
+            throw rethrow(t);
+        }
+    }
+
+    static boolean isWin(Object gs) {
+        try {
+            return (boolean) IS_WIN.invokeExact(gs);
+        } catch (Throwable t) {
+            throw rethrow(t);
+        }
+    }
+
+    static long singlePileBlockers(Object gs, int pile, long blockers) {
+        try {
+            return (long) SINGLE_PILE_BLOCKERS.invokeExact(gs, pile, blockers);
+        } catch (Throwable t) {
+            throw rethrow(t);
+        }
+    }
+
+    static long doublePileBlockers(Object gs, int pileOne, int pileTwo, long blockers) {
+        try {
+            return (long) DOUBLE_PILE_BLOCKERS.invokeExact(gs, pileOne, pileTwo, blockers);
+        } catch (Throwable t) {
+            throw rethrow(t);
+        }
+    }
+
+    static long[] cycleBlockers(Object gs, int maxPiles, long[] blockers) {
+        try {
+            CYCLE_BLOCKERS.invokeExact(gs, maxPiles, blockers);
+            return blockers;
+        } catch (Throwable t) {
+            throw rethrow(t);
+        }
+    }
+
+    // Returns the solution found by A*; empty if there is none
+    static ArrayList<?> solve(Object start) {
+        try {
+            Object stats = (Object) NEW_STATS.invokeExact();
+            return (ArrayList<?>) SEARCH.invokeExact(start, Long.MAX_VALUE, Long.MAX_VALUE, stats);
+        } catch (Throwable t) {
+            throw rethrow(t);
+        }
+    }
+
+    /**
+     * A position partway through a seeded random deal, reached by playing up to numMoves
+     * moves greedily by h(), with ties broken by the same seed. Stops early rather than step
+     * into a position with no moves left. Deals straight out of the box have empty cells and
+     * full piles, which isn't what the search spends its time on.
+     */
+    static Object midGame(long seed, int numMoves) {
+        Random rng = new Random(seed);
+        Object gs = randomDeal(rng);
+        int[] moves = new int[MAX_MOVES];
+        int[] childMoves = new int[MAX_MOVES];
+        for (int i = 0; i < numMoves; i++) {
+            int n = generateMoves(gs, moves);
+            Object best = null;
+            int ties = 0;
+            for (int k = 0; k < n; k++) {
+                Object child = nextState(gs, moves[k]);
+                if (isWin(child) || generateMoves(child, childMoves) == 0) continue;
+                if (best == null || h(child) < h(best)) {
+                    best = child;
+                    ties = 1;
+                }
+                else if (h(child) == h(best) && rng.nextInt(++ties) == 0) {
+                    best = child;
+                }
+            }
+            if (best == null) break;
+            gs = best;
+        }
+        return gs;
+    }
+
+    private static Class<?> load(String name) {
+        try {
+            return Class.forName(name);
+        } catch (ClassNotFoundException e) {
+            throw new IllegalStateException("solver class " + name + " is not on the classpath", e);
+        }
+    }
+
+    private static MethodHandle constructor(Class<?> c, Class<?>... params) {
+        try {
+            return erase(LOOKUP.findConstructor(c, MethodType.methodType(void.class, params)));
+        } catch (ReflectiveOperationException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static MethodHandle virtual(String name, Class<?> returnType, Class<?>... params) {
+        return erase(find(GAME_STATE, name, MethodType.methodType(returnType, params), false));
+    }
+
+    private static MethodHandle find(Class<?> c, String name, MethodType type, boolean isStatic) {
+        try {
+            return isStatic ? LOOKUP.findStatic(c, name, type) : LOOKUP.findVirtual(c, name, type);
+        } catch (ReflectiveOperationException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    // Retypes the handle so every solver class in its signature reads as Object, which is
+    // what lets invokeExact be called from here.
+    private static MethodHandle erase(MethodHandle mh) {
+        MethodType type = mh.type();
+        for (int i = 0; i < type.parameterCount(); i++) {
+            if (type.parameterType(i) == GAME_STATE || type.parameterType(i) == SEARCH_STATS) {
+                type = type.changeParameterType(i, Object.class);
+            }
+        }
+        if (type.returnType() == GAME_STATE || type.returnType() == SEARCH_STATS) {
+            type = type.changeReturnType(Object.class);
+        }
+        return mh.asType(type);
+    }
+
+    private static RuntimeException rethrow(Throwable t) {
+        if (t instanceof RuntimeException) return (RuntimeException) t;
+        if (t instanceof Error) throw (Error) t;
+        return new IllegalStateException(t);
+    }
+}
@@ -0,0 +1,108 @@
+package bench;
+
+import java.util.ArrayList;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * The per-state operations every search engine leans on: making and unmaking a move in
+ * place (which is where h() gets worked out), move generation, making a move into a new
+ * state, and the equals() behind every closed-set lookup.
+ *
+ * Each benchmark runs against a position a few dozen moves into a random deal. The seed
+ * fixes both the deal and the moves played, so every run measures the same positions.
+ *
+ * @author Van Griffith
+ * @version 18 October 2026
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class StateBenchmark
+{
+    @Param({"1", "2", "3"})
+    public long seed;
+
+    @Param({"20"})
+    public int movesIn;
+
+    private Object state;
+    private Object sameState;
+    private Object otherState;
+    private int[] moves;
+    private int numMoves;
+    private int next;
+
+    @Setup
+    public void setUp() {
+        state = Solver.midGame(seed, movesIn);
+        sameState = Solver.copy(state);
+        moves = new int[Solver.MAX_MOVES];
+        numMoves = Solver.generateMoves(state, moves);
+        if (numMoves == 0) {
+            throw new IllegalStateException("seed " + seed + " has no moves; pick another");
+        }
+        otherState = Solver.nextState(state, moves[0]);
+    }
+
+    // h() itself only reads a field; the work is in apply and undo keeping it up to date.
+    // Cycles through every legal move like nextState, and leaves the state as it found it.
+    @Benchmark
+    public int applyUndo() {
+        int move = moves[next];
+        next = (next + 1 == numMoves) ? 0 : next + 1;
+        Solver.apply(state, move);
+        int h = Solver.h(state);
+        Solver.undo(state, move);
+        return h;
+    }
+
+    @Benchmark
+    public ArrayList<?> getLegalActions() {
+        return Solver.legalActions(state);
+    }
+
+    @Benchmark
+    public int generateMoves() {
+        return Solver.generateMoves(state, moves);
+    }
+
+    // Cycles through every legal move, so no single move's cost dominates
+    @Benchmark
+    public Object nextState() {
+        int move = moves[next];
+        next = (next + 1 == numMoves) ? 0 : next + 1;
+        return Solver.nextState(state, move);
+    }
+
+    @Benchmark
+    public Object copy() {
+        return Solver.copy(state);
+    }
+
+    // A closed-set hit: the full comparison
+    @Benchmark
+    public boolean equalsSame() {
+        return state.equals(sameState);
+    }
+
+    // A closed-set collision with a neighbouring position: should bail out early
+    @Benchmark
+    public boolean equalsOther() {
+        return state.equals(otherState);
+    }
+}